@@ -0,0 +1,44 @@
+#!/usr/bin/env bash
+# Mide tiempo de arranque y memoria residente (RSS) de cada variante de la API.
+# Uso:
+#   ./mvnw -DskipTests package            -> variante "jar"
+#   ./mvnw -Paot-cds -DskipTests package  -> variante "aot-cds"
+#   ./mvnw -Pnative native:compile        -> variante "native" (requiere GraalVM)
+#   ./medir-arranque.sh [jar|aot-cds|native ...]   (por defecto, todas las que estén construidas)
+# No hace falta MongoDB: la conexión es perezosa y el arranque no depende de ella.
+
+cd "$(dirname "$0")"
+JAR=target/APIESP32-0.0.1-SNAPSHOT.jar
+PUERTO=${PUERTO:-18080}
+VARIANTES=${*:-jar aot-cds native}
+
+comando() {
+    case "$1" in
+        jar)     [ -f "$JAR" ] && echo "java -jar $JAR" ;;
+        aot-cds) [ -f target/cds/application.jsa ] && echo "java -XX:SharedArchiveFile=target/cds/application.jsa -Dspring.aot.enabled=true -jar target/cds/$(basename $JAR)" ;;
+        native)  [ -x target/APIESP32 ] && echo "./target/APIESP32" ;;
+    esac
+}
+
+printf "%-10s %12s %12s\n" "variante" "arranque(s)" "RSS(MB)"
+for variante in $VARIANTES; do
+    cmd=$(comando "$variante")
+    if [ -z "$cmd" ]; then
+        printf "%-10s %12s %12s\n" "$variante" "-" "no construida"
+        continue
+    fi
+    log=$(mktemp)
+    $cmd --server.port="$PUERTO" > "$log" 2>&1 &
+    pid=$!
+    for _ in $(seq 1 600); do
+        grep -q "Started Apiesp32Application" "$log" && break
+        kill -0 $pid 2>/dev/null || break
+        sleep 0.1
+    done
+    segundos=$(grep -o "Started Apiesp32Application in [0-9.]*" "$log" | awk '{print $4}')
+    rss=$(ps -o rss= -p $pid 2>/dev/null | awk '{printf "%.1f", $1/1024}')
+    kill $pid 2>/dev/null
+    wait $pid 2>/dev/null
+    printf "%-10s %12s %12s\n" "$variante" "${segundos:-error}" "${rss:--}"
+    rm -f "$log"
+done
@@ -0,0 +1,34 @@
+package com.example.demo;
+
+import java.time.LocalDateTime;
+
+// Alerta generada en memoria (meteorología, dispositivos...). Se publica como evento de Spring
+// y se expone en /api/alertas y /api/alertas/feed
+public class Alerta {
+    private String tipo; // "TEMPERATURA_ALTA", "VALOR_ATASCADO", "ANOMALIA", ...
+    private String origen; // Sensor o dispositivo que la provoca
+    private String mensaje;
+    private Double valor;
+    private LocalDateTime fecha;
+
+    public Alerta() {}
+
+    public Alerta(String tipo, String origen, String mensaje, Double valor) {
+        this.tipo = tipo;
+        this.origen = origen;
+        this.mensaje = mensaje;
+        this.valor = valor;
+        this.fecha = LocalDateTime.now();
+    }
+
+    public String getTipo() { return tipo; }
+    public void setTipo(String tipo) { this.tipo = tipo; }
+    public String getOrigen() { return origen; }
+    public void setOrigen(String origen) { this.origen = origen; }
+    public String getMensaje() { return mensaje; }
+    public void setMensaje(String mensaje) { this.mensaje = mensaje; }
+    public Double getValor() { return valor; }
+    public void setValor(Double valor) { this.valor = valor; }
+    public LocalDateTime getFecha() { return fecha; }
+    public void setFecha(LocalDateTime fecha) { this.fecha = fecha; }
+}
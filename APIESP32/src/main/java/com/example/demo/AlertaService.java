@@ -0,0 +1,88 @@
+package com.example.demo;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PreDestroy;
+
+// Punto único para emitir alertas: guarda las últimas en memoria, las publica como evento de
+// Spring (para otros componentes) y las envía a los clientes suscritos al feed SSE.
+// El envío SSE va en un hilo aparte: un cliente lento no frena al hilo que recibe los datos.
+// Si la cola se llena se descartan los envíos más antiguos (siguen en /api/alertas).
+@Service
+public class AlertaService {
+
+    private static final int MAX_RECIENTES = 200;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private final Deque<Alerta> recientes = new ArrayDeque<>();
+    private final List<SseEmitter> suscriptores = new CopyOnWriteArrayList<>();
+    private final ThreadPoolExecutor envios = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(1000), r -> {
+                Thread hilo = new Thread(r, "alertas-sse");
+                hilo.setDaemon(true);
+                return hilo;
+            }, new ThreadPoolExecutor.DiscardOldestPolicy());
+
+    public void emitir(Alerta alerta) {
+        System.out.println("🚨 ALERTA [" + alerta.getTipo() + "] " + alerta.getOrigen() + ": " + alerta.getMensaje());
+
+        synchronized (recientes) {
+            if (recientes.size() == MAX_RECIENTES) {
+                recientes.removeLast();
+            }
+            recientes.addFirst(alerta);
+        }
+
+        eventPublisher.publishEvent(alerta);
+
+        if (!suscriptores.isEmpty()) {
+            envios.execute(() -> enviar(alerta));
+        }
+    }
+
+    private void enviar(Alerta alerta) {
+        for (SseEmitter emitter : suscriptores) {
+            try {
+                emitter.send(SseEmitter.event().name("alerta").data(alerta));
+            } catch (IOException | IllegalStateException e) {
+                suscriptores.remove(emitter); // Cliente desconectado
+            }
+        }
+    }
+
+    @PreDestroy
+    public void alCerrar() {
+        envios.shutdownNow();
+    }
+
+    // Últimas alertas, de la más reciente a la más antigua
+    public List<Alerta> obtenerRecientes() {
+        synchronized (recientes) {
+            return new ArrayList<>(recientes);
+        }
+    }
+
+    public SseEmitter suscribir() {
+        SseEmitter emitter = new SseEmitter(0L); // Sin timeout: el cliente decide cuándo cerrar
+        emitter.onCompletion(() -> suscriptores.remove(emitter));
+        emitter.onTimeout(() -> suscriptores.remove(emitter));
+        emitter.onError(e -> suscriptores.remove(emitter));
+        suscriptores.add(emitter);
+        return emitter;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.demo;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Etapa de análisis en streaming del flujo de meteorología: cada lectura que llega por
+// POST /api/datos actualiza las estadísticas en memoria de SU dispositivo y, si procede, lanza alertas.
+// Cada placa tiene sus propias ventanas: mezclar salas impediría detectar un sensor atascado y
+// haría que el z-score comparase una sala con otra. La clave es la de RegistroDispositivos
+// (el nombre que envía la placa o "ip:<dirección>").
+@Component
+public class AnalizadorMeteorologia {
+
+    // Temperatura y humedad de un dispositivo
+    private static class Sensores {
+        final EstadisticasSensor temperatura;
+        final EstadisticasSensor humedad;
+
+        Sensores(EstadisticasSensor temperatura, EstadisticasSensor humedad) {
+            this.temperatura = temperatura;
+            this.humedad = humedad;
+        }
+    }
+
+    private final double alfa;
+    private final int[] ventanas;
+    private final double zScore;
+    private final int muestrasAtasco;
+    private final double tempMin;
+    private final double tempMax;
+    private final double humMin;
+    private final double humMax;
+    private final int maxDispositivos;
+    private volatile boolean avisoLleno;
+
+    private final Map<String, Sensores> porDispositivo = new ConcurrentHashMap<>();
+
+    @Autowired
+    private AlertaService alertaService;
+
+    public AnalizadorMeteorologia(
+            @Value("${meteo.analisis.alfa:0.2}") double alfa,
+            @Value("${meteo.analisis.ventanas:30,360}") int[] ventanas,
+            @Value("${meteo.analisis.zscore:4}") double zScore,
+            @Value("${meteo.analisis.atasco.muestras:60}") int muestrasAtasco,
+            @Value("${meteo.analisis.temperatura.min:5}") double tempMin,
+            @Value("${meteo.analisis.temperatura.max:30}") double tempMax,
+            @Value("${meteo.analisis.humedad.min:15}") double humMin,
+            @Value("${meteo.analisis.humedad.max:80}") double humMax,
+            @Value("${meteo.analisis.max-dispositivos:32}") int maxDispositivos) {
+        this.alfa = alfa;
+        this.ventanas = ventanas;
+        this.zScore = zScore;
+        this.muestrasAtasco = muestrasAtasco;
+        this.tempMin = tempMin;
+        this.tempMax = tempMax;
+        this.humMin = humMin;
+        this.humMax = humMax;
+        this.maxDispositivos = maxDispositivos;
+    }
+
+    public void registrar(String dispositivo, double temp, double hum, LocalDateTime fecha) {
+        Sensores sensores = porDispositivo.get(dispositivo);
+        if (sensores == null) {
+            // 'dispositivo' lo elige el cliente: no se crean ventanas para nombres ilimitados
+            if (porDispositivo.size() >= maxDispositivos) {
+                if (!avisoLleno) {
+                    avisoLleno = true;
+                    System.err.println("Análisis de meteorología lleno (" + maxDispositivos + "): se ignora "
+                            + dispositivo);
+                    alertaService.emitir(new Alerta("ANALISIS_LLENO", dispositivo, "Sin estadísticas: ya se analizan "
+                            + maxDispositivos + " dispositivos (meteo.analisis.max-dispositivos)", null));
+                }
+                return;
+            }
+            sensores = porDispositivo.computeIfAbsent(dispositivo, d -> new Sensores(
+                    new EstadisticasSensor(d, "temperatura", alfa, ventanas, tempMin, tempMax, zScore, muestrasAtasco),
+                    new EstadisticasSensor(d, "humedad", alfa, ventanas, humMin, humMax, zScore, muestrasAtasco)));
+        }
+        List<Alerta> alertas = new ArrayList<>(sensores.temperatura.registrar(temp, fecha));
+        alertas.addAll(sensores.humedad.registrar(hum, fecha));
+        for (Alerta alerta : alertas) {
+            alertaService.emitir(alerta);
+        }
+    }
+
+    // Resumen de un dispositivo o, si es null, de todos (ordenados por nombre)
+    public List<Map<String, Object>> resumen(String dispositivo) {
+        List<Map<String, Object>> lista = new ArrayList<>();
+        for (Map.Entry<String, Sensores> e : new TreeMap<>(porDispositivo).entrySet()) {
+            if (dispositivo == null || dispositivo.equals(e.getKey())) {
+                lista.add(e.getValue().temperatura.resumen());
+                lista.add(e.getValue().humedad.resumen());
+            }
+        }
+        return lista;
+    }
+}
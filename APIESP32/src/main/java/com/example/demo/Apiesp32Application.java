@@ -6,10 +6,16 @@ import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @SpringBootApplication
+@EnableAsync
+@EnableScheduling
+@ImportRuntimeHints(HintsNativos.class)
 public class Apiesp32Application {
 
     public static void main(String[] args) {
@@ -24,7 +30,8 @@ public class Apiesp32Application {
                 registry.addMapping("/**")
                         .allowedOrigins("*") // Permitir todas las fuentes (útil para desarrollo)
                         .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
-                        .allowedHeaders("*");
+                        .allowedHeaders("*")
+                        .exposedHeaders("X-Next-Cursor"); // Cursor de paginación
             }
         };
     }
@@ -0,0 +1,212 @@
+package com.example.demo;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Histórico reciente de un dispositivo en un anillo de arrays primitivos (columnar):
+// tiempos en epoch-millis, temperatura y humedad en float (NaN = sin dato) y la luz en dos BitSet
+// (valor y "hay dato"). Las consultas por rango localizan los extremos con búsqueda binaria
+// y copian solo ese tramo, sin crear un objeto por muestra.
+public class BufferSensor {
+
+    // Resultado de una consulta: arrays paralelos, uno por columna
+    public static class Serie {
+        private final String dispositivo;
+        private final long[] tiempos;
+        private final float[] temperatura;
+        private final float[] humedad;
+        private final float[] luz; // 1/0 en crudo, fracción de tiempo iluminado si está agregada; NaN sin dato
+
+        public Serie(String dispositivo, long[] tiempos, float[] temperatura, float[] humedad, float[] luz) {
+            this.dispositivo = dispositivo;
+            this.tiempos = tiempos;
+            this.temperatura = temperatura;
+            this.humedad = humedad;
+            this.luz = luz;
+        }
+
+        public String getDispositivo() { return dispositivo; }
+        public long[] getTiempos() { return tiempos; }
+        public float[] getTemperatura() { return temperatura; }
+        public float[] getHumedad() { return humedad; }
+        public float[] getLuz() { return luz; }
+    }
+
+    private final String dispositivo;
+    private final int capacidad;
+    private final long[] tiempos;
+    private final float[] temperatura;
+    private final float[] humedad;
+    private final BitSet luz;
+    private final BitSet luzValida;
+
+    private int inicio; // Posición física de la muestra más antigua
+    private int tamano;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public BufferSensor(String dispositivo, int capacidad) {
+        this.dispositivo = dispositivo;
+        this.capacidad = capacidad;
+        this.tiempos = new long[capacidad];
+        this.temperatura = new float[capacidad];
+        this.humedad = new float[capacidad];
+        this.luz = new BitSet(capacidad);
+        this.luzValida = new BitSet(capacidad);
+    }
+
+    // Añade una muestra; si llega con hora anterior a la última se ajusta para mantener el orden
+    public void agregar(long tiempo, float temp, float hum, Boolean iluminado) {
+        lock.writeLock().lock();
+        try {
+            if (tamano > 0) {
+                tiempo = Math.max(tiempo, tiempos[fisica(tamano - 1)]);
+            }
+            int pos;
+            if (tamano < capacidad) {
+                pos = fisica(tamano);
+                tamano++;
+            } else {
+                pos = inicio; // Sobrescribe la más antigua
+                inicio = (inicio + 1) % capacidad;
+            }
+            tiempos[pos] = tiempo;
+            temperatura[pos] = temp;
+            humedad[pos] = hum;
+            luzValida.set(pos, iluminado != null);
+            luz.set(pos, iluminado != null && iluminado);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Copia las muestras de otro buffer (más recientes que las propias) al final de este
+    public void agregarTodo(BufferSensor otro) {
+        otro.lock.readLock().lock();
+        try {
+            for (int i = 0; i < otro.tamano; i++) {
+                int p = otro.fisica(i);
+                agregar(otro.tiempos[p], otro.temperatura[p], otro.humedad[p],
+                        otro.luzValida.get(p) ? otro.luz.get(p) : null);
+            }
+        } finally {
+            otro.lock.readLock().unlock();
+        }
+    }
+
+    public int getTamano() {
+        lock.readLock().lock();
+        try {
+            return tamano;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Muestras en [desde, hasta) tal cual
+    public Serie rango(long desde, long hasta) {
+        lock.readLock().lock();
+        try {
+            int a = primeraNoMenor(desde);
+            int b = primeraNoMenor(hasta);
+            int n = b - a;
+            long[] t = new long[n];
+            float[] temp = new float[n];
+            float[] hum = new float[n];
+            float[] l = new float[n];
+            for (int i = 0; i < n; i++) {
+                int p = fisica(a + i);
+                t[i] = tiempos[p];
+                temp[i] = temperatura[p];
+                hum[i] = humedad[p];
+                l[i] = !luzValida.get(p) ? Float.NaN : (luz.get(p) ? 1f : 0f);
+            }
+            return new Serie(dispositivo, t, temp, hum, l);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Rango [desde, hasta) reducido a 'puntos' intervalos de igual duración (media por intervalo).
+    // Los intervalos sin muestras se omiten; cada punto lleva la hora de inicio de su intervalo.
+    public Serie reducir(long desde, long hasta, int puntos) {
+        lock.readLock().lock();
+        try {
+            int a = primeraNoMenor(desde);
+            int b = primeraNoMenor(hasta);
+            double ancho = Math.max(1.0, (double) (hasta - desde) / puntos);
+
+            long[] t = new long[puntos];
+            float[] temp = new float[puntos];
+            float[] hum = new float[puntos];
+            float[] l = new float[puntos];
+            int salida = -1;
+            int cubeta = -1;
+            double sumaT = 0, sumaH = 0, sumaL = 0;
+            int nT = 0, nH = 0, nL = 0;
+
+            for (int i = a; i <= b; i++) {
+                int c = -1;
+                int p = 0;
+                if (i < b) {
+                    p = fisica(i);
+                    c = (int) Math.min(puntos - 1, (long) ((tiempos[p] - desde) / ancho));
+                }
+                if (c != cubeta) {
+                    if (cubeta >= 0) {
+                        salida++;
+                        t[salida] = desde + (long) (cubeta * ancho);
+                        temp[salida] = nT == 0 ? Float.NaN : (float) (sumaT / nT);
+                        hum[salida] = nH == 0 ? Float.NaN : (float) (sumaH / nH);
+                        l[salida] = nL == 0 ? Float.NaN : (float) (sumaL / nL);
+                    }
+                    cubeta = c;
+                    sumaT = sumaH = sumaL = 0;
+                    nT = nH = nL = 0;
+                }
+                if (i == b) {
+                    break;
+                }
+                if (!Float.isNaN(temperatura[p])) {
+                    sumaT += temperatura[p];
+                    nT++;
+                }
+                if (!Float.isNaN(humedad[p])) {
+                    sumaH += humedad[p];
+                    nH++;
+                }
+                if (luzValida.get(p)) {
+                    sumaL += luz.get(p) ? 1 : 0;
+                    nL++;
+                }
+            }
+
+            int n = salida + 1;
+            return new Serie(dispositivo, Arrays.copyOf(t, n), Arrays.copyOf(temp, n),
+                    Arrays.copyOf(hum, n), Arrays.copyOf(l, n));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Índice lógico de la primera muestra con tiempo >= t (tamano si no hay ninguna)
+    private int primeraNoMenor(long t) {
+        int bajo = 0;
+        int alto = tamano;
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (tiempos[fisica(medio)] < t) {
+                bajo = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        return bajo;
+    }
+
+    private int fisica(int logica) {
+        int p = inicio + logica;
+        return p >= capacidad ? p - capacidad : p;
+    }
+}
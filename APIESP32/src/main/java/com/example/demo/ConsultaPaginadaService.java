@@ -0,0 +1,153 @@
+package com.example.demo;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.types.ObjectId;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+// Paginación por clave (keyset) sobre (fecha, id), del registro más reciente al más antiguo.
+// A diferencia de skip/offset, cada página es una búsqueda por índice, sin recorrer las anteriores.
+@Service
+public class ConsultaPaginadaService {
+
+    public static final int LIMITE_POR_DEFECTO = 50;
+    public static final int LIMITE_MAXIMO = 500;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    // Resultado de una página: filas (entidades o mapas si se pidió 'fields') y cursor de la siguiente
+    public static class Pagina {
+        private final List<Object> datos;
+        private final String siguiente;
+
+        public Pagina(List<Object> datos, String siguiente) {
+            this.datos = datos;
+            this.siguiente = siguiente;
+        }
+
+        public List<Object> getDatos() { return datos; }
+        public String getSiguiente() { return siguiente; }
+    }
+
+    /**
+     * @param filtro     criterio adicional (p.ej. usuario) o null
+     * @param campoFecha propiedad de ordenación ("fechaHora", "fecha")
+     * @param limite     filas por página (se acota a LIMITE_MAXIMO)
+     * @param after      cursor devuelto por la página anterior o null para la primera
+     * @param campos     lista separada por comas de propiedades a devolver o null para el documento completo
+     */
+    public Pagina buscar(Class<?> tipo, Criteria filtro, String campoFecha, Integer limite, String after,
+            String campos) {
+        int n = limite == null ? LIMITE_POR_DEFECTO : Math.max(1, Math.min(limite, LIMITE_MAXIMO));
+
+        List<Criteria> condiciones = new ArrayList<>();
+        if (filtro != null) {
+            condiciones.add(filtro);
+        }
+        if (after != null && !after.isEmpty()) {
+            Object[] cursor = decodificar(after);
+            LocalDateTime fecha = (LocalDateTime) cursor[0];
+            ObjectId id = (ObjectId) cursor[1];
+            condiciones.add(new Criteria().orOperator(
+                    Criteria.where(campoFecha).lt(fecha),
+                    Criteria.where(campoFecha).is(fecha).and("_id").lt(id)));
+        }
+
+        Query query = new Query();
+        if (!condiciones.isEmpty()) {
+            query.addCriteria(new Criteria().andOperator(condiciones));
+        }
+        query.with(Sort.by(Sort.Direction.DESC, campoFecha, "_id"));
+        query.limit(n + 1); // Una fila extra para saber si hay más páginas
+
+        List<String> proyeccion = null;
+        if (campos != null && !campos.isBlank()) {
+            proyeccion = validarCampos(tipo, campos);
+            query.fields().include(campoFecha); // Siempre necesarios para construir el cursor
+            for (String campo : proyeccion) {
+                query.fields().include(campo);
+            }
+        }
+
+        List<?> filas = mongoTemplate.find(query, tipo);
+
+        String siguiente = null;
+        if (filas.size() > n) {
+            filas = filas.subList(0, n);
+            BeanWrapper ultima = new BeanWrapperImpl(filas.get(n - 1));
+            siguiente = codificar((LocalDateTime) ultima.getPropertyValue(campoFecha),
+                    (String) ultima.getPropertyValue("id"));
+        }
+
+        List<Object> datos = new ArrayList<>(filas.size());
+        for (Object fila : filas) {
+            datos.add(proyeccion == null ? fila : recortar(fila, proyeccion));
+        }
+        return new Pagina(datos, siguiente);
+    }
+
+    // Solo se admiten propiedades legibles de la entidad para no exponer ni consultar campos arbitrarios
+    private static List<String> validarCampos(Class<?> tipo, String campos) {
+        BeanWrapper bean = new BeanWrapperImpl(tipo);
+        List<String> lista = new ArrayList<>();
+        for (String campo : campos.split(",")) {
+            String nombre = campo.trim();
+            if (nombre.isEmpty()) {
+                continue;
+            }
+            if (!bean.isReadableProperty(nombre) || "class".equals(nombre)) {
+                throw new IllegalArgumentException("Campo desconocido: " + nombre);
+            }
+            lista.add(nombre);
+        }
+        if (!lista.contains("id")) {
+            lista.add(0, "id");
+        }
+        return lista;
+    }
+
+    private static Map<String, Object> recortar(Object fila, List<String> campos) {
+        BeanWrapper bean = new BeanWrapperImpl(fila);
+        Map<String, Object> mapa = new LinkedHashMap<>();
+        for (String campo : campos) {
+            mapa.put(campo, bean.getPropertyValue(campo));
+        }
+        return mapa;
+    }
+
+    // Cursor opaco: base64url("fecha|id")
+    static String codificar(LocalDateTime fecha, String id) {
+        String texto = fecha + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(texto.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Object[] decodificar(String cursor) {
+        try {
+            String texto = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separador = texto.indexOf('|');
+            if (separador < 0) {
+                throw new IllegalArgumentException("Cursor inválido");
+            }
+            LocalDateTime fecha = LocalDateTime.parse(texto.substring(0, separador));
+            ObjectId id = new ObjectId(texto.substring(separador + 1));
+            return new Object[] { fecha, id };
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Cursor inválido");
+        }
+    }
+}
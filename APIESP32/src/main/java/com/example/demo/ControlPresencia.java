@@ -15,6 +15,9 @@ public class ControlPresencia {
     private String tipo; // "ENTRADA", "SALIDA"
     private boolean accesoPermitido;
     private String detalles;
+    private Long secuencia; // Nº de transición del usuario (version de estado_presencia); único por usuario
+    private Integer intentos; // Solo en resúmenes INTENTO: fallos agrupados en este registro
+    private LocalDateTime primerIntento; // Solo en resúmenes INTENTO: el último es fechaHora
 
     public ControlPresencia() {}
 
@@ -42,4 +45,10 @@ public class ControlPresencia {
     public void setAccesoPermitido(boolean accesoPermitido) { this.accesoPermitido = accesoPermitido; }
     public String getDetalles() { return detalles; }
     public void setDetalles(String detalles) { this.detalles = detalles; }
+    public Long getSecuencia() { return secuencia; }
+    public void setSecuencia(Long secuencia) { this.secuencia = secuencia; }
+    public Integer getIntentos() { return intentos; }
+    public void setIntentos(Integer intentos) { this.intentos = intentos; }
+    public LocalDateTime getPrimerIntento() { return primerIntento; }
+    public void setPrimerIntento(LocalDateTime primerIntento) { this.primerIntento = primerIntento; }
 }
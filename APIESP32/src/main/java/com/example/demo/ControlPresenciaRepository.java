@@ -7,4 +7,8 @@ import java.util.Optional;
 public interface ControlPresenciaRepository extends MongoRepository<ControlPresencia, String> {
     List<ControlPresencia> findByUsuario(String usuario);
     Optional<ControlPresencia> findTopByUsuarioOrderByFechaHoraDesc(String usuario);
+    Optional<ControlPresencia> findTopByUsuarioAndAccesoPermitidoTrueOrderByFechaHoraDesc(String usuario);
+    Optional<ControlPresencia> findTopByUsuarioAndSecuenciaNotNullOrderBySecuenciaDesc(String usuario);
+    Optional<ControlPresencia> findByUsuarioAndSecuencia(String usuario, Long secuencia);
+    long countByUsuarioAndSecuencia(String usuario, Long secuencia);
 }
@@ -10,6 +10,7 @@ public class DatosSensorDTO {
     private String token;
     private String pin;
     private String tipo;
+    private String dispositivo; // Identificador de la placa (opcional, "esp32" si no se envía)
 
     public String getPin() {
         return pin;
@@ -19,6 +20,14 @@ public class DatosSensorDTO {
         this.pin = pin;
     }
 
+    public String getDispositivo() {
+        return dispositivo;
+    }
+
+    public void setDispositivo(String dispositivo) {
+        this.dispositivo = dispositivo;
+    }
+
     public String getTipo() {
         return tipo;
     }
@@ -0,0 +1,254 @@
+package com.example.demo;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+// Detector de fuerza bruta para los fichajes por token/PIN.
+// - Ventana deslizante por clave ("token:...", "usuario:...", "disp:<ip>"): si en 'ventana' se
+//   acumulan 'maxIntentos' fallos la clave queda bloqueada durante 'bloqueo', y esos intentos se
+//   rechazan antes de consultar la BD. Las claves de dispositivo ("disp:") tienen su propio límite,
+//   mucho mayor: todo el personal ficha en la misma placa y unos pocos PIN erróneos de una
+//   persona no deben dejar el lector bloqueado para los demás.
+// - Los fallos no se guardan uno a uno: se agrupan y cada 'resumen' ms se escribe un único
+//   registro INTENTO por usuario y motivo con el número de intentos, el primero y el último
+//   (campos intentos, primerIntento y fechaHora). Los tokens desconocidos se agrupan por
+//   dispositivo con un motivo fijo y una muestra de los tokens probados, así que enumerar tokens
+//   sigue dando un solo registro por placa.
+// - Las claves y los resúmenes los elige quien envía la petición: ambos mapas tienen tope
+//   ('max-claves'). Sin hueco, una clave nueva no se cuenta (las de dispositivo ya existentes
+//   siguen contando) y un resumen nuevo se suma a uno de desborde.
+@Component
+public class DetectorFuerzaBruta {
+
+    // Últimos 'maxIntentos' fallos de una clave en un anillo: O(1) por intento
+    private static class Contador {
+        final long[] fallos;
+        int siguiente;
+        int total;
+        long bloqueadoHasta;
+
+        Contador(int maxIntentos) {
+            this.fallos = new long[maxIntentos];
+        }
+
+        // Registra un fallo y devuelve true si con él se alcanzan maxIntentos dentro de la ventana
+        synchronized boolean fallo(long ahora, long ventanaMs, long bloqueoMs) {
+            fallos[siguiente] = ahora;
+            siguiente = (siguiente + 1) % fallos.length;
+            if (total < fallos.length) {
+                total++;
+            }
+            // Con el anillo lleno, 'siguiente' apunta al más antiguo de los últimos maxIntentos
+            if (total == fallos.length && ahora - fallos[siguiente] <= ventanaMs && bloqueadoHasta <= ahora) {
+                bloqueadoHasta = ahora + bloqueoMs;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized boolean bloqueado(long ahora) {
+            return bloqueadoHasta > ahora;
+        }
+
+        synchronized boolean caducado(long ahora, long ventanaMs) {
+            int ultimo = (siguiente + fallos.length - 1) % fallos.length;
+            return bloqueadoHasta <= ahora && (total == 0 || ahora - fallos[ultimo] > ventanaMs);
+        }
+    }
+
+    // Intentos fallidos pendientes de escribir, agrupados por usuario + método + motivo (+ dispositivo)
+    private static class Resumen {
+        final String usuario;
+        final String metodo;
+        final String motivo;
+        int intentos;
+        LocalDateTime primero;
+        LocalDateTime ultimo;
+        final LinkedHashSet<String> tokens = new LinkedHashSet<>(); // Muestra de tokens desconocidos
+        boolean masTokens; // Hubo tokens distintos que no cupieron en la muestra
+
+        Resumen(String usuario, String metodo, String motivo) {
+            this.usuario = usuario;
+            this.metodo = metodo;
+            this.motivo = motivo;
+        }
+    }
+
+    private static final String PREFIJO_DISPOSITIVO = "disp:";
+    private static final String USUARIO_DESCONOCIDO = "DESCONOCIDO";
+    private static final String CLAVE_DESBORDE = "desborde";
+    private static final int MUESTRA_TOKENS = 5;
+
+    private final int maxIntentos;
+    private final int maxIntentosDispositivo;
+    private final long ventanaMs;
+    private final long bloqueoMs;
+    private final int maxClaves;
+    private volatile boolean avisadoTope;
+
+    private final Map<String, Contador> contadores = new ConcurrentHashMap<>();
+    private final Map<String, Resumen> pendientes = new ConcurrentHashMap<>();
+
+    @Autowired
+    private ControlPresenciaRepository controlPresenciaRepository;
+
+    @Autowired
+    private AlertaService alertaService;
+
+    public DetectorFuerzaBruta(
+            @Value("${seguridad.intentos.max:5}") int maxIntentos,
+            @Value("${seguridad.intentos.dispositivo.max:50}") int maxIntentosDispositivo,
+            @Value("${seguridad.intentos.ventana:5m}") Duration ventana,
+            @Value("${seguridad.intentos.bloqueo:15m}") Duration bloqueo,
+            @Value("${seguridad.intentos.max-claves:10000}") int maxClaves) {
+        this.maxIntentos = maxIntentos;
+        this.maxIntentosDispositivo = maxIntentosDispositivo;
+        this.ventanaMs = ventana.toMillis();
+        this.bloqueoMs = bloqueo.toMillis();
+        this.maxClaves = maxClaves;
+    }
+
+    public boolean estaBloqueado(String... claves) {
+        long ahora = System.currentTimeMillis();
+        for (String clave : claves) {
+            Contador c = contadores.get(clave);
+            if (c != null && c.bloqueado(ahora)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Fallo de autenticación: cuenta para todas las claves implicadas y se acumula en el resumen
+    public void registrarFallo(String usuario, String metodo, String motivo, String... claves) {
+        contar(claves);
+        acumular(usuario + "|" + metodo + "|" + motivo, usuario, metodo, motivo, null);
+    }
+
+    // Token que no pertenece a ninguna tarjeta: un resumen por dispositivo, con muestra de los tokens
+    public void registrarTokenDesconocido(String token, String dispositivo, String... claves) {
+        contar(claves);
+        String motivo = "Token no registrado desde " + dispositivo;
+        acumular(USUARIO_DESCONOCIDO + "|TOKEN|" + motivo, USUARIO_DESCONOCIDO, "TOKEN", motivo, token);
+    }
+
+    private void contar(String... claves) {
+        long ahora = System.currentTimeMillis();
+        for (String clave : claves) {
+            Contador c = contadores.get(clave);
+            if (c == null) {
+                if (contadores.size() >= maxClaves) {
+                    avisarTope();
+                    continue;
+                }
+                c = contadores.computeIfAbsent(clave, k -> new Contador(
+                        k.startsWith(PREFIJO_DISPOSITIVO) ? maxIntentosDispositivo : maxIntentos));
+            }
+            if (c.fallo(ahora, ventanaMs, bloqueoMs)) {
+                alertaService.emitir(new Alerta("BLOQUEO_FUERZA_BRUTA", clave, c.fallos.length
+                        + " intentos fallidos en " + Duration.ofMillis(ventanaMs).toMinutes()
+                        + " min. Bloqueado " + Duration.ofMillis(bloqueoMs).toMinutes() + " min", null));
+            }
+        }
+    }
+
+    // Intento rechazado por bloqueo: no consulta la BD, solo entra en el resumen
+    public void registrarRechazo(String usuario, String metodo) {
+        String motivo = "Bloqueado por intentos fallidos";
+        acumular(usuario + "|" + metodo + "|" + motivo, usuario, metodo, motivo, null);
+    }
+
+    // Un acceso correcto limpia el historial de fallos de sus claves
+    public void registrarExito(String... claves) {
+        for (String clave : claves) {
+            contadores.remove(clave);
+        }
+    }
+
+    private void acumular(String clave, String usuario, String metodo, String motivo, String token) {
+        if (!pendientes.containsKey(clave) && pendientes.size() >= maxClaves) {
+            avisarTope();
+            clave = CLAVE_DESBORDE; // Todo lo que no cabe se cuenta en un único resumen
+            usuario = USUARIO_DESCONOCIDO;
+            metodo = "VARIOS";
+            motivo = "Intentos fallidos sin resumen propio (tope de resúmenes alcanzado)";
+        }
+        String u = usuario;
+        String m = metodo;
+        String mot = motivo;
+        LocalDateTime ahora = LocalDateTime.now();
+        pendientes.compute(clave, (k, r) -> {
+            if (r == null) {
+                r = new Resumen(u, m, mot);
+                r.primero = ahora;
+            }
+            r.intentos++;
+            r.ultimo = ahora;
+            if (token != null && !r.tokens.contains(token)) {
+                if (r.tokens.size() < MUESTRA_TOKENS) {
+                    r.tokens.add(token);
+                } else {
+                    r.masTokens = true;
+                }
+            }
+            return r;
+        });
+    }
+
+    private void avisarTope() {
+        if (!avisadoTope) {
+            avisadoTope = true;
+            System.err.println("⚠️ Tope de claves de intentos fallidos alcanzado (" + maxClaves
+                    + "): las nuevas se agrupan sin contador propio");
+        }
+    }
+
+    // Escribe los resúmenes acumulados en un solo saveAll y purga contadores inactivos
+    @Scheduled(fixedDelayString = "${seguridad.intentos.resumen:60000}")
+    public void volcarResumenes() {
+        List<ControlPresencia> registros = new ArrayList<>();
+        for (String clave : pendientes.keySet()) {
+            Resumen r = pendientes.remove(clave);
+            if (r == null) {
+                continue;
+            }
+            String detalles = r.intentos == 1 ? r.motivo
+                    : r.motivo + " (x" + r.intentos + " entre " + r.primero + " y " + r.ultimo + ")";
+            if (!r.tokens.isEmpty()) {
+                detalles += ". Tokens: " + String.join(", ", r.tokens) + (r.masTokens ? "..." : "");
+            }
+            ControlPresencia registro = new ControlPresencia(r.usuario, r.ultimo, r.metodo, "INTENTO", false, detalles);
+            registro.setIntentos(r.intentos);
+            registro.setPrimerIntento(r.primero);
+            registros.add(registro);
+        }
+        if (!registros.isEmpty()) {
+            try {
+                controlPresenciaRepository.saveAll(registros);
+            } catch (Exception e) {
+                System.err.println("Error guardando resumen de intentos: " + e.getMessage());
+            }
+        }
+
+        long ahora = System.currentTimeMillis();
+        contadores.entrySet().removeIf(e -> e.getValue().caducado(ahora, ventanaMs));
+        avisadoTope = false;
+    }
+
+    @PreDestroy
+    public void alCerrar() {
+        volcarResumenes();
+    }
+}
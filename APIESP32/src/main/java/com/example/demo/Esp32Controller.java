@@ -5,6 +5,11 @@ import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -13,11 +18,15 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Optional;
 
-import java.time.temporal.ChronoUnit;
 import org.springframework.web.bind.annotation.RequestParam;
 
 @RestController
@@ -42,6 +51,45 @@ public class Esp32Controller {
     @Autowired
     private SesionTrabajoRepository sesionTrabajoRepository;
 
+    @Autowired
+    private ExportacionNominaService exportacionNominaService;
+
+    @Autowired
+    private ConsultaPaginadaService consultaPaginadaService;
+
+    @Autowired
+    private AnalizadorMeteorologia analizadorMeteorologia;
+
+    @Autowired
+    private AlertaService alertaService;
+
+    @Autowired
+    private OcupacionService ocupacionService;
+
+    @Autowired
+    private DetectorFuerzaBruta detectorFuerzaBruta;
+
+    @Autowired
+    private ReconciliacionSesionesService reconciliacionSesionesService;
+
+    @Autowired
+    private HistorialSensoresService historialSensoresService;
+
+    @Autowired
+    private FichajeService fichajeService;
+
+    @Autowired
+    private MotorProyecciones motorProyecciones;
+
+    @Autowired
+    private PausaTrabajoRepository pausaTrabajoRepository;
+
+    @Autowired
+    private ResumenDiarioRepository resumenDiarioRepository;
+
+    @Autowired
+    private RegistroDispositivos registroDispositivos;
+
     // --- ENDPOINTS GET DE CONSULTA ---
 
     // 1. Obtener TODOS los datos agrupados
@@ -57,9 +105,17 @@ public class Esp32Controller {
     }
 
     // 1.1 Obtener Control de Presencia (NUEVO)
+    // Paginado (opcional): /api/control-presencia?limit=50&fields=usuario,tipo,fechaHora
+    // La siguiente página se pide con ?after=<cabecera X-Next-Cursor de la respuesta anterior>
     @GetMapping("/control-presencia")
-    public ResponseEntity<List<ControlPresencia>> obtenerControlPresencia() {
-        return ResponseEntity.ok(controlPresenciaRepository.findAll());
+    public ResponseEntity<?> obtenerControlPresencia(
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) String fields) {
+        if (limit == null && after == null && fields == null) {
+            return ResponseEntity.ok(controlPresenciaRepository.findAll());
+        }
+        return paginar(ControlPresencia.class, null, "fechaHora", limit, after, fields);
     }
 
     // 2. Obtener solo Meteorología (Solo el más reciente)
@@ -68,32 +124,109 @@ public class Esp32Controller {
         return ResponseEntity.ok(metereologiaRepository.findTop1ByOrderByFechaDesc());
     }
 
+    // 2.1 Estadísticas en vivo de meteorología por dispositivo (EWMA, min/max y varianza por ventana)
+    // Uso: /api/datos/meteorologia/estadisticas?dispositivo=sala1 (sin parámetro: todos)
+    // El nombre es el de /api/dispositivos ("ip:<dirección>" si la placa no envía 'dispositivo')
+    @GetMapping("/datos/meteorologia/estadisticas")
+    public ResponseEntity<List<Map<String, Object>>> obtenerEstadisticasMetereologia(
+            @RequestParam(required = false) String dispositivo) {
+        return ResponseEntity.ok(analizadorMeteorologia.resumen(dispositivo));
+    }
+
+    // 2.1.1 Histórico reciente desde memoria (arrays paralelos por columna)
+    // Uso: /api/datos/meteorologia/historial?horas=24&puntos=300 (reducido a 300 intervalos)
+    // Uso: /api/datos/meteorologia/historial?horas=1 (todas las lecturas de la última hora)
+    // Uso: /api/datos/meteorologia/historial?dispositivo=ip:192.168.1.40 (nombre de /api/dispositivos;
+    // sin parámetro, la única placa si solo hay una)
+    @GetMapping("/datos/meteorologia/historial")
+    public ResponseEntity<BufferSensor.Serie> obtenerHistorialMetereologia(
+            @RequestParam(defaultValue = "24") double horas,
+            @RequestParam(required = false) Integer puntos,
+            @RequestParam(required = false) String dispositivo) {
+        return ResponseEntity.ok(historialSensoresService.consultar(dispositivo, horas, puntos));
+    }
+
+    // 2.2 Últimas alertas generadas (de la más reciente a la más antigua)
+    @GetMapping("/alertas")
+    public ResponseEntity<List<Alerta>> obtenerAlertas() {
+        return ResponseEntity.ok(alertaService.obtenerRecientes());
+    }
+
+    // 2.3 Feed de alertas en tiempo real (Server-Sent Events)
+    @GetMapping(value = "/alertas/feed", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter suscribirAlertas() {
+        return alertaService.suscribir();
+    }
+
+    // 2.4 Estado de las placas: IP, última conexión, peticiones/min, errores y si siguen en línea
+    @GetMapping("/dispositivos")
+    public ResponseEntity<List<EstadoDispositivo>> obtenerDispositivos() {
+        return ResponseEntity.ok(registroDispositivos.obtenerTodos());
+    }
+
     // 3. Obtener solo Luz
     @GetMapping("/datos/luz")
     public ResponseEntity<List<Luz>> obtenerDatosLuz() {
         return ResponseEntity.ok(luzRepository.findTop1ByOrderByFechaDesc());
     }
 
-    // 4. Obtener solo Accesos RFID
+    // 4. Obtener solo Accesos RFID (admite limit/after/fields como 1.1)
     @GetMapping("/datos/rfid")
-    public ResponseEntity<List<TarjetaRFID>> obtenerDatosRFID() {
-        return ResponseEntity.ok(tarjetaRFIDRepository.findAll());
+    public ResponseEntity<?> obtenerDatosRFID(
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) String fields) {
+        if (limit == null && after == null && fields == null) {
+            return ResponseEntity.ok(tarjetaRFIDRepository.findAll());
+        }
+        return paginar(TarjetaRFID.class, null, "fecha", limit, after, fields);
     }
 
-    // 5. Obtener solo Presencia
+    // 5. Obtener solo Presencia (admite limit/after/fields como 1.1)
     @GetMapping("/datos/presencia")
-    public ResponseEntity<List<ControlPresencia>> obtenerDatosPresencia() {
-        return ResponseEntity.ok(controlPresenciaRepository.findAll());
+    public ResponseEntity<?> obtenerDatosPresencia(
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) String fields) {
+        if (limit == null && after == null && fields == null) {
+            return ResponseEntity.ok(controlPresenciaRepository.findAll());
+        }
+        return paginar(ControlPresencia.class, null, "fechaHora", limit, after, fields);
     }
 
     // 6. Obtener historial de un usuario específico (Para calcular horas en
-    // Frontend)
+    // Frontend). Admite limit/after/fields como 1.1
     @GetMapping("/control-presencia/usuario/{username}")
-    public ResponseEntity<List<ControlPresencia>> obtenerHistorialUsuario(@PathVariable String username) {
-        return ResponseEntity.ok(controlPresenciaRepository.findByUsuario(username));
+    public ResponseEntity<?> obtenerHistorialUsuario(@PathVariable String username,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) String fields) {
+        if (limit == null && after == null && fields == null) {
+            return ResponseEntity.ok(controlPresenciaRepository.findByUsuario(username));
+        }
+        return paginar(ControlPresencia.class, Criteria.where("usuario").is(username), "fechaHora", limit, after,
+                fields);
+    }
+
+    // Página por clave (fecha, id): el cuerpo sigue siendo una lista y el cursor viaja en X-Next-Cursor
+    private ResponseEntity<?> paginar(Class<?> tipo, Criteria filtro, String campoFecha, Integer limit,
+            String after, String fields) {
+        try {
+            ConsultaPaginadaService.Pagina pagina = consultaPaginadaService.buscar(tipo, filtro, campoFecha, limit,
+                    after, fields);
+            ResponseEntity.BodyBuilder respuesta = ResponseEntity.ok();
+            if (pagina.getSiguiente() != null) {
+                respuesta.header("X-Next-Cursor", pagina.getSiguiente());
+            }
+            return respuesta.body(pagina.getDatos());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
     }
 
     // 7. Obtener Sesiones Consolidadas (Jornadas completas) con filtro opcional
+    // Las calcula MotorProyecciones a partir de los fichajes con proyecciones.retraso (30 s) de margen: una
+    // sesión aparece entre 30 s y 30 s + proyecciones.intervalo-ms después de la SALIDA (lo mismo en 7.3 y 7.4)
     // Uso: /api/sesiones/usuario/Borja?dias=7 (Última semana)
     // Uso: /api/sesiones/usuario/Borja?dias=30 (Último mes)
     @GetMapping("/sesiones/usuario/{username}")
@@ -111,6 +244,115 @@ public class Esp32Controller {
         return ResponseEntity.ok(sesionTrabajoRepository.findByUsuario(username));
     }
 
+    // 7.1 Sesiones cerradas automáticamente que un responsable debe revisar
+    @GetMapping("/sesiones/revision")
+    public ResponseEntity<List<SesionTrabajo>> obtenerSesionesPendientesRevision() {
+        return ResponseEntity.ok(sesionTrabajoRepository.findByPendienteRevisionTrue());
+    }
+
+    // 7.2 Endpoint de Mantenimiento: lanza a mano la reconciliación nocturna de jornadas sin cerrar
+    // Uso: /api/sesiones/reconciliar (corte = hoy a las 00:00)
+    @PostMapping("/sesiones/reconciliar")
+    public ResponseEntity<?> reconciliarSesiones() {
+        try {
+            return ResponseEntity.ok(reconciliacionSesionesService.reconciliar(LocalDate.now().atStartOfDay()));
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Error en la reconciliación: " + e.getMessage());
+        }
+    }
+
+    // 7.3 Pausas y consultas médicas de un usuario (mismo filtro 'dias' que 7)
+    @GetMapping("/pausas/usuario/{username}")
+    public ResponseEntity<List<PausaTrabajo>> obtenerPausasUsuario(
+            @PathVariable String username,
+            @RequestParam(required = false) Integer dias) {
+
+        if (dias != null) {
+            LocalDateTime fechaInicio = LocalDateTime.now().minusDays(dias);
+            return ResponseEntity.ok(
+                    pausaTrabajoRepository.findByUsuarioAndInicioBetween(username, fechaInicio, LocalDateTime.now()));
+        }
+        return ResponseEntity.ok(pausaTrabajoRepository.findByUsuario(username));
+    }
+
+    // 7.4 Totales por día de un usuario (trabajo, pausa, médico y nº de sesiones)
+    // Uso: /api/resumen-diario/usuario/Borja?dias=30
+    @GetMapping("/resumen-diario/usuario/{username}")
+    public ResponseEntity<List<ResumenDiario>> obtenerResumenDiario(
+            @PathVariable String username,
+            @RequestParam(required = false) Integer dias) {
+
+        if (dias != null) {
+            LocalDate hoy = LocalDate.now();
+            return ResponseEntity.ok(resumenDiarioRepository
+                    .findByUsuarioAndFechaBetweenOrderByFechaAsc(username, hoy.minusDays(dias), hoy));
+        }
+        return ResponseEntity.ok(resumenDiarioRepository.findByUsuarioOrderByFechaAsc(username));
+    }
+
+    // 7.5 Estado de las proyecciones (posición en control_presencia, política, última reconstrucción)
+    @GetMapping("/proyecciones/estado")
+    public ResponseEntity<?> obtenerEstadoProyecciones() {
+        ProyeccionCheckpoint checkpoint = motorProyecciones.obtenerCheckpoint();
+        if (checkpoint == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(checkpoint);
+    }
+
+    // 7.6 Endpoint de Mantenimiento: recalcula sesiones, pausas y totales desde control_presencia
+    // (p.ej. tras cambiar jornada.* en application.properties). Reescribe lo derivado de todos los
+    // usuarios con fichajes; lo de usuarios sin fichajes en control_presencia se conserva
+    @PostMapping("/proyecciones/reconstruir")
+    public ResponseEntity<?> reconstruirProyecciones() {
+        try {
+            return ResponseEntity.ok(motorProyecciones.reconstruir());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Error reconstruyendo proyecciones: " + e.getMessage());
+        }
+    }
+
+    // 8. Exportación para nóminas (Sesiones + Fichajes) de todos o varios usuarios
+    // Uso: /api/exportar/nomina?desde=2025-01-01&hasta=2025-12-31&formato=xlsx
+    // Uso: /api/exportar/nomina?desde=2025-06-01&hasta=2025-06-30&usuarios=Borja,Ana
+    @GetMapping("/exportar/nomina")
+    public ResponseEntity<?> exportarNomina(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+            @RequestParam(required = false) List<String> usuarios,
+            @RequestParam(defaultValue = "csv") String formato) {
+
+        if (hasta.isBefore(desde)) {
+            return ResponseEntity.badRequest().body("'hasta' no puede ser anterior a 'desde'");
+        }
+
+        // 'hasta' es inclusivo: exportamos hasta el final de ese día
+        LocalDateTime inicio = desde.atStartOfDay();
+        LocalDateTime fin = hasta.plusDays(1).atStartOfDay();
+        String nombre = "nomina_" + desde + "_" + hasta;
+
+        StreamingResponseBody cuerpo;
+        MediaType tipo;
+        if ("xlsx".equalsIgnoreCase(formato)) {
+            cuerpo = salida -> exportacionNominaService.exportarXlsx(inicio, fin, usuarios, salida);
+            tipo = MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+            nombre += ".xlsx";
+        } else if ("csv".equalsIgnoreCase(formato)) {
+            cuerpo = salida -> exportacionNominaService.exportarCsv(inicio, fin, usuarios, salida);
+            tipo = MediaType.parseMediaType("text/csv; charset=UTF-8");
+            nombre += ".csv";
+        } else {
+            return ResponseEntity.badRequest().body("Formato no soportado: " + formato + " (csv, xlsx)");
+        }
+
+        return ResponseEntity.ok()
+                .contentType(tipo)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + nombre + "\"")
+                .body(cuerpo);
+    }
+
     // Endpoint para registrar nuevos usuarios dinámicamente
     @PostMapping("/usuarios/registrar")
     public ResponseEntity<String> registrarUsuario(@RequestBody Usuario nuevoUsuario) {
@@ -160,6 +402,12 @@ public class Esp32Controller {
         }
     }
 
+    // Quién está dentro ahora mismo (incluye pausas y médico), servido desde memoria
+    @GetMapping("/presencia/actual")
+    public ResponseEntity<List<Map<String, Object>>> obtenerPresenciaActual() {
+        return ResponseEntity.ok(ocupacionService.obtenerActual());
+    }
+
     @PostMapping("/presencia/manual")
     public ResponseEntity<String> registrarPresenciaManual(@RequestBody Map<String, String> payload) {
         String username = payload.get("usuario");
@@ -175,48 +423,68 @@ public class Esp32Controller {
             return ResponseEntity.badRequest().body("Usuario no encontrado");
         }
 
-        // Lógica de sesión si es SALIDA
-        if ("SALIDA".equals(tipo) || "INICIO_PAUSA".equals(tipo)) {
-            Optional<ControlPresencia> ultimoRegistro = controlPresenciaRepository
-                    .findTopByUsuarioOrderByFechaHoraDesc(username);
-            if (ultimoRegistro.isPresent() && "ENTRADA".equals(ultimoRegistro.get().getTipo())) {
-                try {
-                    LocalDateTime entrada = ultimoRegistro.get().getFechaHora();
-                    LocalDateTime salida = LocalDateTime.now();
-                    long minutos = ChronoUnit.MINUTES.between(entrada, salida);
-
-                    // Solo guardamos sesión si es SALIDA/FIN JORNADA o para contabilizar tramos
-                    // (opcional simplificado)
-                    if ("SALIDA".equals(tipo)) {
-                        SesionTrabajo sesion = new SesionTrabajo(username, entrada, salida, minutos);
-                        sesionTrabajoRepository.save(sesion);
-                    }
-                } catch (Exception e) {
-                    System.err.println("Error cálculo sesión manual: " + e.getMessage());
-                }
-            }
+        // Lectura-decisión-escritura con compare-and-set (seguro con varias instancias)
+        try {
+            fichajeService.ficharManual(username, tipo, ubicacion);
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(409).body("Fichaje simultáneo, inténtalo de nuevo");
         }
 
-        ControlPresencia registro = new ControlPresencia(username, LocalDateTime.now(), "MANUAL_APP", tipo, true,
-                "Registrado desde App (" + ubicacion + ")");
-        controlPresenciaRepository.save(registro);
-
         return ResponseEntity.ok("Fichaje registrado: " + tipo);
     }
 
     @PostMapping("/datos")
-    public ResponseEntity<Object> recibirDatos(@RequestBody DatosSensorDTO datos) {
+    public ResponseEntity<Object> recibirDatos(@RequestBody DatosSensorDTO datos, HttpServletRequest request) {
+        // Registro de conexión de la placa (en memoria; se vuelca a 'dispositivos' en bloque).
+        // La misma clave identifica la placa en el registro, las estadísticas y el histórico: el
+        // sketch de serie no envía 'dispositivo', así que cada placa se distingue por su IP
+        String ip = request.getRemoteAddr();
+        String dispositivo = RegistroDispositivos.clave(datos.getDispositivo(), ip);
+        registroDispositivos.registrar(dispositivo, ip);
+        try {
+            ResponseEntity<Object> respuesta = procesarDatos(datos, dispositivo, request);
+            if (respuesta.getStatusCode().isError()) {
+                Object cuerpo = respuesta.getBody();
+                registroDispositivos.registrarError(dispositivo, ip, respuesta.getStatusCode().value()
+                        + (cuerpo instanceof String ? " " + cuerpo : ""));
+            }
+            return respuesta;
+        } catch (RuntimeException e) {
+            registroDispositivos.registrarError(dispositivo, ip, e.getClass().getSimpleName() + ": "
+                    + e.getMessage());
+            throw e;
+        }
+    }
+
+    private ResponseEntity<Object> procesarDatos(DatosSensorDTO datos, String dispositivo,
+            HttpServletRequest request) {
 
         // --- 1. LOGIN CON TOKEN + PIN (SEGURIDAD ALTA) RECOMENDADO ---
         if (datos.getToken() != null && !datos.getToken().isEmpty()) {
             System.out.println(">>> LOGIN POR TOKEN: " + datos.getToken());
 
+            // Tarjeta o dispositivo bloqueados por intentos fallidos: se rechaza sin tocar la BD
+            String claveToken = "token:" + datos.getToken();
+            String claveDispositivo = "disp:" + request.getRemoteAddr();
+            if (detectorFuerzaBruta.estaBloqueado(claveToken, claveDispositivo)) {
+                System.out.println("⛔ BLOQUEADO POR INTENTOS FALLIDOS: " + datos.getToken());
+                detectorFuerzaBruta.registrarRechazo("DESCONOCIDO", "TOKEN");
+                return ResponseEntity.status(429).body("BLOQUEADO");
+            }
+
             Optional<Usuario> usuarioOpt = usuarioRepository.findByRfidToken(datos.getToken());
 
             if (usuarioOpt.isPresent()) {
                 Usuario u = usuarioOpt.get();
                 boolean pinCorrecto = true;
                 String metodo = "TOKEN";
+                String claveUsuario = "usuario:" + u.getUsername();
+
+                if (detectorFuerzaBruta.estaBloqueado(claveUsuario)) {
+                    System.out.println("⛔ USUARIO BLOQUEADO POR INTENTOS FALLIDOS: " + u.getUsername());
+                    detectorFuerzaBruta.registrarRechazo(u.getUsername(), metodo);
+                    return ResponseEntity.status(429).body("BLOQUEADO");
+                }
 
                 // Si viene PIN en la petición, lo verificamos usando la PASSWORD
                 if (datos.getPin() != null && !datos.getPin().isEmpty()) {
@@ -230,102 +498,29 @@ public class Esp32Controller {
 
                 if (pinCorrecto) {
                     System.out.println("✅ ACCESO CONCEDIDO A: " + u.getUsername());
-
-                    // Lógica de Fichaje (Entrada/Salida) o Motivo Manual
-                    String tipoMovimiento = "ENTRADA"; // Valor por defecto
-
-                    // 1. Si viene un TIPO explícito, evaluamos lógica contextual
-                    if (datos.getTipo() != null && !datos.getTipo().isEmpty()) {
-                        String rawTipo = datos.getTipo();
-
-                        // Lógica Contextual: Determinamos la acción real basada en el estado previo
-                        Optional<ControlPresencia> ultimoRegistro = controlPresenciaRepository
-                                .findTopByUsuarioOrderByFechaHoraDesc(u.getUsername());
-
-                        boolean estabaDentro = false;
-                        if (ultimoRegistro.isPresent()) {
-                            String lastT = ultimoRegistro.get().getTipo();
-                            // Consideramos "dentro" si lo último fue ENTRADA o FIN_PAUSA
-                            // Consideramos "fuera" si fue SALIDA, INICIO_PAUSA, etc.
-                            // Simplificación: Si el último es ENTRADA -> Está dentro.
-                            if ("ENTRADA".equals(lastT) || "FIN_PAUSA".equals(lastT) || "VUELTA_MEDICO".equals(lastT)) {
-                                estabaDentro = true;
-                            }
-                        }
-
-                        // Mapeo de Intención (Arduino) a Acción Real (DB)
-                        if ("PAUSA".equals(rawTipo)) {
-                            tipoMovimiento = estabaDentro ? "INICIO_PAUSA" : "FIN_PAUSA";
-                        } else if ("MEDICO".equals(rawTipo)) {
-                            tipoMovimiento = estabaDentro ? "CONSULTA" : "VUELTA_MEDICO";
-                            if ("VUELTA_MEDICO".equals(tipoMovimiento))
-                                tipoMovimiento = "ENTRADA"; // Normalizamos a ENTRADA
-                        } else {
-                            // Si envían "ENTRADA", "SALIDA" explícitos (Arduino A/B o Mobile App)
-                            // Se usan tal cual. 'A' -> "ENTRADA", 'B' -> "SALIDA"
-                            tipoMovimiento = rawTipo;
-                        }
-
-                        // Si resulta ser una SALIDA (de cualquier tipo), calculamos sesión
-                        if ("SALIDA".equals(tipoMovimiento) || "INICIO_PAUSA".equals(tipoMovimiento)
-                                || "CONSULTA".equals(tipoMovimiento)) {
-                            if (estabaDentro && ultimoRegistro.isPresent()) {
-                                try {
-                                    LocalDateTime entrada = ultimoRegistro.get().getFechaHora();
-                                    LocalDateTime salida = LocalDateTime.now();
-                                    long minutos = ChronoUnit.MINUTES.between(entrada, salida);
-
-                                    // Solo registramos sesión de trabajo productivo en SALIDA o INICIO_PAUSA
-                                    // (Si se va al médico, ¿cuenta como trabajo? Depende politica. Aquí asumimos
-                                    // sesión cerrada).
-                                    SesionTrabajo sesion = new SesionTrabajo(u.getUsername(), entrada, salida, minutos);
-                                    sesionTrabajoRepository.save(sesion);
-                                } catch (Exception e) {
-                                    System.err.println("Error cálculo sesión sensor: " + e.getMessage());
-                                }
-                            }
-                        }
-                    } else {
-                        // 2. Lógica AUTOMÁTICA (si no se envía tipo) -> Alternar Entrada/Salida
-                        Optional<ControlPresencia> ultimoRegistro = controlPresenciaRepository
-                                .findTopByUsuarioOrderByFechaHoraDesc(u.getUsername());
-
-                        if (ultimoRegistro.isPresent()) {
-                            String ultimoTipo = ultimoRegistro.get().getTipo();
-                            if ("ENTRADA".equals(ultimoTipo) && ultimoRegistro.get().isAccesoPermitido()) {
-                                tipoMovimiento = "SALIDA";
-
-                                // --- CALCULO Y GUARDADO DE SESION DE TRABAJO ---
-                                try {
-                                    LocalDateTime entrada = ultimoRegistro.get().getFechaHora();
-                                    LocalDateTime salida = LocalDateTime.now();
-                                    long minutos = ChronoUnit.MINUTES.between(entrada, salida);
-
-                                    SesionTrabajo sesion = new SesionTrabajo(u.getUsername(), entrada, salida, minutos);
-                                    sesionTrabajoRepository.save(sesion);
-                                    System.out
-                                            .println("⏳ Sesión Guardada: " + minutos + " min para " + u.getUsername());
-                                } catch (Exception e) {
-                                    System.err.println("Error al calcular sesión: " + e.getMessage());
-                                }
-                            }
-                        }
+                    detectorFuerzaBruta.registrarExito(claveToken, claveUsuario);
+
+                    // Lógica de Fichaje (Entrada/Salida) o Motivo Manual: la decisión según el estado
+                    // previo y el guardado de la sesión los hace FichajeService con compare-and-set
+                    String tipoMovimiento;
+                    try {
+                        tipoMovimiento = fichajeService.ficharSensor(u.getUsername(), metodo, datos.getTipo());
+                    } catch (OptimisticLockingFailureException e) {
+                        return ResponseEntity.status(409).body("FICHAJE SIMULTANEO");
                     }
-
-                    controlPresenciaRepository.save(new ControlPresencia(u.getUsername(), LocalDateTime.now(), metodo,
-                            tipoMovimiento, true, "Acceso Correcto"));
                     return ResponseEntity.ok(tipoMovimiento + ": " + u.getUsername());
                 } else {
                     System.out.println("❌ PIN INCORRECTO PARA: " + u.getUsername());
-                    controlPresenciaRepository.save(new ControlPresencia(u.getUsername(), LocalDateTime.now(), metodo,
-                            "INTENTO", false, "PIN Incorrecto"));
+                    // El INTENTO se guarda agrupado por el detector (recuento, primero y último)
+                    detectorFuerzaBruta.registrarFallo(u.getUsername(), metodo, "PIN Incorrecto",
+                            claveToken, claveDispositivo, claveUsuario);
                     return ResponseEntity.status(401).body("PIN INCORRECTO");
                 }
             } else {
                 System.out.println("❌ TOKEN IVÁLIDO");
-                // Registrar intento fallido desconocido
-                controlPresenciaRepository.save(new ControlPresencia("DESCONOCIDO", LocalDateTime.now(), "TOKEN",
-                        "INTENTO", false, "Token no registrado: " + datos.getToken()));
+                // Registrar intento fallido desconocido (agrupado por el detector por dispositivo)
+                detectorFuerzaBruta.registrarTokenDesconocido(datos.getToken(), request.getRemoteAddr(),
+                        claveToken, claveDispositivo);
                 return ResponseEntity.status(401).body("TOKEN NO RECONOCIDO");
             }
         }
@@ -365,20 +560,34 @@ public class Esp32Controller {
         System.out.println(">>> DATO SENSOR RECIBIDO: Temp=" + datos.getTemperatura() + " Hum=" + datos.getHumedad()
                 + " Luz=" + datos.getLuz());
 
+        LocalDateTime fechaLectura = LocalDateTime.now();
+
         // Guardar Datos Meteorológicos
 
         if (datos.getTemperatura() != null && datos.getHumedad() != null) {
             Metereologia metereologia = new Metereologia(datos.getTemperatura(), datos.getHumedad());
+            metereologia.setDispositivo(dispositivo);
+            metereologia.setFecha(fechaLectura);
             metereologiaRepository.save(metereologia);
+            analizadorMeteorologia.registrar(dispositivo, metereologia.getTemperatura(), metereologia.getHumedad(),
+                    metereologia.getFecha());
         }
 
         // Guardar Datos de Luz
         if (datos.getLuz() != null) {
             // Asumiendo que el dato 'luz' es booleano indicando si está "iluminado"
             Luz luz = new Luz(datos.getLuz());
+            luz.setDispositivo(dispositivo);
+            luz.setFecha(fechaLectura);
             luzRepository.save(luz);
         }
 
+        // Histórico reciente en memoria (gráficas de las últimas horas)
+        if (datos.getTemperatura() != null || datos.getHumedad() != null || datos.getLuz() != null) {
+            historialSensoresService.registrar(dispositivo, fechaLectura, datos.getTemperatura(), datos.getHumedad(),
+                    datos.getLuz());
+        }
+
         return ResponseEntity.ok("Datos recibidos correctamente");
     }
 }
@@ -0,0 +1,132 @@
+package com.example.demo;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Estado incremental de un sensor (temperatura, humedad...): EWMA, ventanas deslizantes,
+// detección de valor atascado y de lecturas fuera de rango o anómalas.
+// Cada muestra cuesta O(1); nunca se consulta el histórico en MongoDB.
+public class EstadisticasSensor {
+
+    // Diferencia por debajo de la cual dos lecturas se consideran "el mismo valor"
+    private static final double EPSILON = 1e-6;
+
+    private final String dispositivo;
+    private final String nombre;
+    private final double alfa;
+    private final double umbralMin;
+    private final double umbralMax;
+    private final double zScore;
+    private final int muestrasAtasco;
+    private final VentanaDeslizante[] ventanas; // Ordenadas de menor a mayor tamaño
+
+    private long muestras;
+    private double ewma;
+    private double ultimo;
+    private LocalDateTime fechaUltimo;
+    private int repeticiones; // Lecturas consecutivas iguales a la última
+
+    // Estados actuales: solo se alerta al entrar en ellos, no en cada muestra
+    private boolean fueraDeRango;
+    private boolean atascado;
+    private boolean anomalo;
+
+    public EstadisticasSensor(String dispositivo, String nombre, double alfa, int[] tamanosVentana, double umbralMin, double umbralMax,
+            double zScore, int muestrasAtasco) {
+        this.dispositivo = dispositivo;
+        this.nombre = nombre;
+        this.alfa = alfa;
+        this.umbralMin = umbralMin;
+        this.umbralMax = umbralMax;
+        this.zScore = zScore;
+        this.muestrasAtasco = muestrasAtasco;
+        int[] ordenados = tamanosVentana.clone();
+        Arrays.sort(ordenados);
+        this.ventanas = new VentanaDeslizante[ordenados.length];
+        for (int i = 0; i < ordenados.length; i++) {
+            ventanas[i] = new VentanaDeslizante(ordenados[i]);
+        }
+    }
+
+    // Incorpora una lectura y devuelve las alertas que provoca (normalmente ninguna)
+    public synchronized List<Alerta> registrar(double x, LocalDateTime fecha) {
+        List<Alerta> alertas = new ArrayList<>(0);
+        String origen = dispositivo + "/" + nombre;
+
+        // Anomalía: comparamos con la ventana más larga ANTES de incluir la nueva muestra
+        VentanaDeslizante base = ventanas[ventanas.length - 1];
+        boolean esAnomala = false;
+        if (base.isLlena()) {
+            double desviacion = base.getDesviacion();
+            esAnomala = desviacion > EPSILON && Math.abs(x - base.getMedia()) > zScore * desviacion;
+        }
+        if (esAnomala && !anomalo) {
+            alertas.add(new Alerta("ANOMALIA", origen, String.format(
+                    "Lectura %.2f se aleja más de %.1f desviaciones de la media %.2f", x, zScore, base.getMedia()), x));
+        }
+        anomalo = esAnomala;
+
+        // Umbrales absolutos (sala sobrecalentada, humedad excesiva...)
+        boolean fuera = x > umbralMax || x < umbralMin;
+        if (fuera && !fueraDeRango) {
+            String tipo = x > umbralMax ? "VALOR_ALTO" : "VALOR_BAJO";
+            alertas.add(new Alerta(tipo, origen, String.format(
+                    "Lectura %.2f fuera del rango [%.2f, %.2f]", x, umbralMin, umbralMax), x));
+        }
+        fueraDeRango = fuera;
+
+        // Sensor congelado: la misma lectura muchas veces seguidas
+        if (muestras > 0 && Math.abs(x - ultimo) < EPSILON) {
+            repeticiones++;
+        } else {
+            repeticiones = 1;
+        }
+        boolean estaAtascado = repeticiones >= muestrasAtasco;
+        if (estaAtascado && !atascado) {
+            alertas.add(new Alerta("VALOR_ATASCADO", origen, String.format(
+                    "El sensor lleva %d lecturas seguidas en %.2f", repeticiones, x), x));
+        }
+        atascado = estaAtascado;
+
+        ewma = muestras == 0 ? x : alfa * x + (1 - alfa) * ewma;
+        for (VentanaDeslizante v : ventanas) {
+            v.agregar(x);
+        }
+        ultimo = x;
+        fechaUltimo = fecha;
+        muestras++;
+        return alertas;
+    }
+
+    // Foto del estado actual para el endpoint de estadísticas
+    public synchronized Map<String, Object> resumen() {
+        Map<String, Object> r = new LinkedHashMap<>();
+        r.put("dispositivo", dispositivo);
+        r.put("sensor", nombre);
+        r.put("muestras", muestras);
+        r.put("ultimo", muestras == 0 ? null : ultimo);
+        r.put("fechaUltimo", fechaUltimo);
+        r.put("ewma", muestras == 0 ? null : ewma);
+        r.put("atascado", atascado);
+        r.put("fueraDeRango", fueraDeRango);
+        List<Map<String, Object>> listaVentanas = new ArrayList<>();
+        for (VentanaDeslizante v : ventanas) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("tamano", v.getTamano());
+            m.put("ocupadas", v.getOcupadas());
+            if (v.getOcupadas() > 0) {
+                m.put("media", v.getMedia());
+                m.put("minimo", v.getMinimo());
+                m.put("maximo", v.getMaximo());
+                m.put("varianza", v.getVarianza());
+            }
+            listaVentanas.add(m);
+        }
+        r.put("ventanas", listaVentanas);
+        return r;
+    }
+}
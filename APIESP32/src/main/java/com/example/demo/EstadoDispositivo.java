@@ -0,0 +1,46 @@
+package com.example.demo;
+
+import java.time.LocalDateTime;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// Estado de conexión de una placa. RegistroDispositivos lo mantiene en memoria y lo vuelca aquí
+// en bloque cada pocos segundos; también es la respuesta de /api/dispositivos
+@Document(collection = "dispositivos")
+public class EstadoDispositivo {
+    @Id
+    private String id; // 'dispositivo' enviado por la placa o "ip:<dirección>" si no lo envía
+
+    private String ip;
+    private LocalDateTime primeraConexion;
+    private LocalDateTime ultimaConexion;
+    private long peticiones;
+    private double peticionesPorMinuto;
+    private long errores;
+    private String ultimoError;
+    private LocalDateTime fechaUltimoError;
+    private boolean enLinea;
+
+    public EstadoDispositivo() {}
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getIp() { return ip; }
+    public void setIp(String ip) { this.ip = ip; }
+    public LocalDateTime getPrimeraConexion() { return primeraConexion; }
+    public void setPrimeraConexion(LocalDateTime primeraConexion) { this.primeraConexion = primeraConexion; }
+    public LocalDateTime getUltimaConexion() { return ultimaConexion; }
+    public void setUltimaConexion(LocalDateTime ultimaConexion) { this.ultimaConexion = ultimaConexion; }
+    public long getPeticiones() { return peticiones; }
+    public void setPeticiones(long peticiones) { this.peticiones = peticiones; }
+    public double getPeticionesPorMinuto() { return peticionesPorMinuto; }
+    public void setPeticionesPorMinuto(double peticionesPorMinuto) { this.peticionesPorMinuto = peticionesPorMinuto; }
+    public long getErrores() { return errores; }
+    public void setErrores(long errores) { this.errores = errores; }
+    public String getUltimoError() { return ultimoError; }
+    public void setUltimoError(String ultimoError) { this.ultimoError = ultimoError; }
+    public LocalDateTime getFechaUltimoError() { return fechaUltimoError; }
+    public void setFechaUltimoError(LocalDateTime fechaUltimoError) { this.fechaUltimoError = fechaUltimoError; }
+    public boolean isEnLinea() { return enLinea; }
+    public void setEnLinea(boolean enLinea) { this.enLinea = enLinea; }
+}
@@ -0,0 +1,29 @@
+package com.example.demo;
+
+import java.time.LocalDateTime;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// Estado actual de fichaje de cada usuario (un documento por usuario).
+// Se modifica solo por compare-and-set sobre 'version' (findAndModify), lo que permite
+// procesar fichajes en varias instancias de la API a la vez sin pisarse.
+@Document(collection = "estado_presencia")
+public class EstadoPresencia {
+    @Id
+    private String id; // Username
+
+    private String tipo; // Último tipo aceptado ("ENTRADA", "SALIDA", "INICIO_PAUSA"...), null si nunca fichó
+    private LocalDateTime fechaHora;
+    private long version;
+
+    public EstadoPresencia() {}
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getTipo() { return tipo; }
+    public void setTipo(String tipo) { this.tipo = tipo; }
+    public LocalDateTime getFechaHora() { return fechaHora; }
+    public void setFechaHora(LocalDateTime fechaHora) { this.fechaHora = fechaHora; }
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
+}
@@ -0,0 +1,191 @@
+package com.example.demo;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+// Exportación de horas para nóminas (Sesiones + Fichajes) en CSV o XLSX.
+// Se lee con cursor de Mongo y se escribe fila a fila, sin cargar el rango completo en memoria.
+// Las dos consultas ordenan por (usuario, fecha) siguiendo un índice ascendente (IndicesMongo), así
+// que el cursor devuelve la primera fila sin ordenar antes el rango completo.
+@Service
+public class ExportacionNominaService {
+
+    // Documentos que pide el cursor en cada viaje a Mongo
+    private static final int LOTE_CURSOR = 500;
+
+    // Filas que SXSSF mantiene en memoria antes de volcarlas al fichero temporal
+    private static final int FILAS_EN_MEMORIA = 100;
+
+    // Cada cuántas filas CSV forzamos el envío al cliente
+    private static final int FLUSH_CADA = 1000;
+
+    private static final String[] CABECERA_SESIONES = { "usuario", "inicio", "fin", "duracionMinutos" };
+    private static final String[] CABECERA_PRESENCIA = { "usuario", "fechaHora", "tipo", "metodoAuth",
+            "accesoPermitido", "detalles" };
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    // CSV único con una columna "registro" (SESION / PRESENCIA) para distinguir el origen de cada fila
+    public void exportarCsv(LocalDateTime desde, LocalDateTime hasta, List<String> usuarios, OutputStream salida)
+            throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(salida, StandardCharsets.UTF_8));
+        writer.write("registro,usuario,inicio,fin,duracionMinutos,tipo,metodoAuth,accesoPermitido,detalles\n");
+        writer.flush(); // El cliente empieza a recibir la descarga inmediatamente
+
+        int filas = 0;
+        try (Stream<SesionTrabajo> sesiones = mongoTemplate.stream(consultaSesiones(desde, hasta, usuarios),
+                SesionTrabajo.class)) {
+            for (SesionTrabajo s : (Iterable<SesionTrabajo>) sesiones::iterator) {
+                writer.write("SESION,");
+                writer.write(csv(s.getUsuario()));
+                writer.write(',');
+                writer.write(csv(s.getInicio()));
+                writer.write(',');
+                writer.write(csv(s.getFin()));
+                writer.write(',');
+                writer.write(Long.toString(s.getDuracionMinutos()));
+                writer.write(",,,,\n");
+                if (++filas % FLUSH_CADA == 0) {
+                    writer.flush();
+                }
+            }
+        }
+
+        try (Stream<ControlPresencia> fichajes = mongoTemplate.stream(consultaPresencia(desde, hasta, usuarios),
+                ControlPresencia.class)) {
+            for (ControlPresencia p : (Iterable<ControlPresencia>) fichajes::iterator) {
+                writer.write("PRESENCIA,");
+                writer.write(csv(p.getUsuario()));
+                writer.write(',');
+                writer.write(csv(p.getFechaHora()));
+                writer.write(",,,");
+                writer.write(csv(p.getTipo()));
+                writer.write(',');
+                writer.write(csv(p.getMetodoAuth()));
+                writer.write(',');
+                writer.write(Boolean.toString(p.isAccesoPermitido()));
+                writer.write(',');
+                writer.write(csv(p.getDetalles()));
+                writer.write('\n');
+                if (++filas % FLUSH_CADA == 0) {
+                    writer.flush();
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    // Libro con dos hojas ("Sesiones" y "Presencia"); SXSSF solo retiene una ventana de filas en memoria.
+    // A diferencia del CSV, la descarga no empieza hasta el final: las filas van a ficheros temporales
+    // y el .xlsx (un zip) solo se puede escribir en 'salida' cuando las dos hojas están completas.
+    public void exportarXlsx(LocalDateTime desde, LocalDateTime hasta, List<String> usuarios, OutputStream salida)
+            throws IOException {
+        SXSSFWorkbook libro = new SXSSFWorkbook(FILAS_EN_MEMORIA);
+        libro.setCompressTempFiles(true);
+        try {
+            CellStyle estiloFecha = libro.createCellStyle();
+            estiloFecha.setDataFormat(libro.getCreationHelper().createDataFormat().getFormat("yyyy-mm-dd hh:mm:ss"));
+
+            SXSSFSheet hojaSesiones = libro.createSheet("Sesiones");
+            cabecera(hojaSesiones, CABECERA_SESIONES);
+            int fila = 1;
+            try (Stream<SesionTrabajo> sesiones = mongoTemplate.stream(consultaSesiones(desde, hasta, usuarios),
+                    SesionTrabajo.class)) {
+                for (SesionTrabajo s : (Iterable<SesionTrabajo>) sesiones::iterator) {
+                    Row row = hojaSesiones.createRow(fila++);
+                    row.createCell(0).setCellValue(s.getUsuario());
+                    fecha(row, 1, s.getInicio(), estiloFecha);
+                    fecha(row, 2, s.getFin(), estiloFecha);
+                    row.createCell(3).setCellValue(s.getDuracionMinutos());
+                }
+            }
+
+            SXSSFSheet hojaPresencia = libro.createSheet("Presencia");
+            cabecera(hojaPresencia, CABECERA_PRESENCIA);
+            fila = 1;
+            try (Stream<ControlPresencia> fichajes = mongoTemplate.stream(consultaPresencia(desde, hasta, usuarios),
+                    ControlPresencia.class)) {
+                for (ControlPresencia p : (Iterable<ControlPresencia>) fichajes::iterator) {
+                    Row row = hojaPresencia.createRow(fila++);
+                    row.createCell(0).setCellValue(p.getUsuario());
+                    fecha(row, 1, p.getFechaHora(), estiloFecha);
+                    row.createCell(2).setCellValue(p.getTipo());
+                    row.createCell(3).setCellValue(p.getMetodoAuth());
+                    row.createCell(4).setCellValue(p.isAccesoPermitido());
+                    row.createCell(5).setCellValue(p.getDetalles());
+                }
+            }
+
+            libro.write(salida);
+            salida.flush();
+        } finally {
+            libro.close(); // Borra también los ficheros temporales de SXSSF
+        }
+    }
+
+    private Query consultaSesiones(LocalDateTime desde, LocalDateTime hasta, List<String> usuarios) {
+        Criteria criterio = Criteria.where("inicio").gte(desde).lt(hasta);
+        if (usuarios != null && !usuarios.isEmpty()) {
+            criterio = criterio.and("usuario").in(usuarios);
+        }
+        return new Query(criterio)
+                .with(Sort.by("usuario", "inicio")) // Índice único (usuario, inicio)
+                .cursorBatchSize(LOTE_CURSOR)
+                .allowDiskUse(true);
+    }
+
+    private Query consultaPresencia(LocalDateTime desde, LocalDateTime hasta, List<String> usuarios) {
+        Criteria criterio = Criteria.where("fechaHora").gte(desde).lt(hasta);
+        if (usuarios != null && !usuarios.isEmpty()) {
+            criterio = criterio.and("usuario").in(usuarios);
+        }
+        return new Query(criterio)
+                .with(Sort.by("usuario", "fechaHora")) // Índice (usuario, fechaHora) ascendente
+                .cursorBatchSize(LOTE_CURSOR)
+                .allowDiskUse(true);
+    }
+
+    private static void cabecera(SXSSFSheet hoja, String[] columnas) {
+        Row row = hoja.createRow(0);
+        for (int i = 0; i < columnas.length; i++) {
+            row.createCell(i).setCellValue(columnas[i]);
+        }
+    }
+
+    private static void fecha(Row row, int columna, LocalDateTime valor, CellStyle estilo) {
+        if (valor != null) {
+            row.createCell(columna).setCellValue(valor);
+            row.getCell(columna).setCellStyle(estilo);
+        }
+    }
+
+    private static String csv(Object valor) {
+        if (valor == null) {
+            return "";
+        }
+        String texto = valor.toString();
+        if (texto.indexOf(',') >= 0 || texto.indexOf('"') >= 0 || texto.indexOf('\n') >= 0) {
+            return '"' + texto.replace("\"", "\"\"") + '"';
+        }
+        return texto;
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.demo;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import com.mongodb.bulk.BulkWriteError;
+
+// Lectura-decisión-escritura de los fichajes, segura con varias instancias de la API.
+// Cada transición del usuario tiene un número de secuencia (= version del estado + 1):
+// 1. Primero se inserta el evento en control_presencia con esa secuencia. El índice único
+//    (usuario, secuencia) hace que solo una instancia pueda escribir cada transición.
+// 2. Después estado_presencia avanza por compare-and-set sobre 'version' hasta esa secuencia.
+// Si el proceso cae entre los dos pasos, el evento existe y el estado va un paso por detrás: el
+// siguiente fichaje choca con la secuencia ocupada, aplica ese evento al estado y vuelve a decidir.
+// Así el estado nunca refleja una transición que no esté en el log de eventos, del que
+// MotorProyecciones deriva las sesiones. La fechaHora nunca retrocede respecto al estado previo,
+// de modo que el orden por fecha coincide con el de secuencia aunque los relojes de las
+// instancias no estén sincronizados.
+@Service
+public class FichajeService {
+
+    private static final int MAX_REINTENTOS = 5;
+    private static final int CLAVE_DUPLICADA = 11000; // Código de error de MongoDB
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ControlPresenciaRepository controlPresenciaRepository;
+
+    @Autowired
+    private OcupacionService ocupacionService;
+
+    // Fichaje desde la App: el tipo se usa tal cual
+    public String ficharManual(String username, String tipo, String ubicacion) {
+        return fichar(username, "MANUAL_APP", "Registrado desde App (" + ubicacion + ")", previo -> tipo);
+    }
+
+    // Fichaje desde el lector (token / token+PIN). rawTipo null = alternar Entrada/Salida
+    public String ficharSensor(String username, String metodo, String rawTipo) {
+        return fichar(username, metodo, "Acceso Correcto", previo -> {
+            String lastT = previo.getTipo();
+
+            if (rawTipo == null || rawTipo.isEmpty()) {
+                // Lógica AUTOMÁTICA (si no se envía tipo) -> Alternar Entrada/Salida
+                return "ENTRADA".equals(lastT) ? "SALIDA" : "ENTRADA";
+            }
+
+            // Lógica Contextual: Determinamos la acción real basada en el estado previo.
+            // Consideramos "dentro" si lo último fue ENTRADA, FIN_PAUSA o VUELTA_MEDICO
+            boolean estabaDentro = "ENTRADA".equals(lastT) || "FIN_PAUSA".equals(lastT)
+                    || "VUELTA_MEDICO".equals(lastT);
+
+            // Mapeo de Intención (Arduino) a Acción Real (DB)
+            if ("PAUSA".equals(rawTipo)) {
+                return estabaDentro ? "INICIO_PAUSA" : "FIN_PAUSA";
+            } else if ("MEDICO".equals(rawTipo)) {
+                return estabaDentro ? "CONSULTA" : "ENTRADA"; // La vuelta del médico se normaliza a ENTRADA
+            }
+            // "ENTRADA", "SALIDA" explícitos (Arduino A/B o Mobile App) se usan tal cual
+            return rawTipo;
+        });
+    }
+
+    private String fichar(String usuario, String metodo, String detalles, Function<EstadoPresencia, String> decidir) {
+        for (int intento = 0; intento < MAX_REINTENTOS; intento++) {
+            EstadoPresencia previo = leerOCrear(usuario);
+            String tipo = decidir.apply(previo);
+            long secuencia = previo.getVersion() + 1;
+
+            ControlPresencia evento = new ControlPresencia(usuario, marcaTemporal(previo), metodo, tipo, true, detalles);
+            evento.setSecuencia(secuencia);
+            try {
+                controlPresenciaRepository.insert(evento);
+            } catch (DuplicateKeyException e) {
+                // Otra instancia (o un intento que no llegó a actualizar el estado) ya escribió esta
+                // transición: se lleva el estado hasta ella y se decide de nuevo sobre el resultado
+                controlPresenciaRepository.findByUsuarioAndSecuencia(usuario, secuencia)
+                        .ifPresent(existente -> avanzarEstado(previo, existente));
+                continue;
+            }
+
+            // Si el compare-and-set falla, otra instancia ya movió el estado. Con el índice único eso solo
+            // ocurre al re-aplicar nuestro propio evento (la secuencia es nuestra); si hay otro evento con la
+            // misma secuencia, el estado refleja el suyo: se retira el nuestro y se decide de nuevo
+            if (!avanzarEstado(previo, evento)
+                    && controlPresenciaRepository.countByUsuarioAndSecuencia(usuario, secuencia) > 1) {
+                controlPresenciaRepository.deleteById(evento.getId());
+                System.err.println("⚠️ Secuencia " + secuencia + " de " + usuario
+                        + " duplicada (¿falta el índice único?): fichaje repetido");
+                continue;
+            }
+            ocupacionService.registrar(usuario, tipo, evento.getFechaHora());
+            return tipo;
+        }
+        throw new OptimisticLockingFailureException("Demasiados fichajes simultáneos para " + usuario);
+    }
+
+    // Lleva el estado de 'previo.version' a la secuencia del evento; false si ya no estaba en 'previo'
+    private boolean avanzarEstado(EstadoPresencia previo, ControlPresencia evento) {
+        return mongoTemplate.findAndModify(
+                new Query(Criteria.where("_id").is(previo.getId()).and("version").is(previo.getVersion())),
+                new Update().set("tipo", evento.getTipo()).set("fechaHora", evento.getFechaHora())
+                        .set("version", evento.getSecuencia()),
+                EstadoPresencia.class) != null;
+    }
+
+    // Ahora (con la precisión de MongoDB), pero nunca antes ni igual que el fichaje previo del usuario
+    private static LocalDateTime marcaTemporal(EstadoPresencia previo) {
+        LocalDateTime ahora = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        if (previo.getFechaHora() != null && !ahora.isAfter(previo.getFechaHora())) {
+            return previo.getFechaHora().plus(1, ChronoUnit.MILLIS);
+        }
+        return ahora;
+    }
+
+    private EstadoPresencia leerOCrear(String usuario) {
+        EstadoPresencia estado = mongoTemplate.findById(usuario, EstadoPresencia.class);
+        if (estado != null) {
+            return estado;
+        }
+        // Primer fichaje desde que existe estado_presencia: se parte del último registro aceptado y
+        // de la última secuencia usada (por si el estado se borró después de haber fichajes con secuencia)
+        Update inicial = new Update().setOnInsert("version", controlPresenciaRepository
+                .findTopByUsuarioAndSecuenciaNotNullOrderBySecuenciaDesc(usuario)
+                .map(ControlPresencia::getSecuencia).orElse(0L));
+        Optional<ControlPresencia> ultimo = controlPresenciaRepository
+                .findTopByUsuarioAndAccesoPermitidoTrueOrderByFechaHoraDesc(usuario);
+        if (ultimo.isPresent()) {
+            inicial.setOnInsert("tipo", ultimo.get().getTipo()).setOnInsert("fechaHora", ultimo.get().getFechaHora());
+        }
+        try {
+            return mongoTemplate.findAndModify(new Query(Criteria.where("_id").is(usuario)), inicial,
+                    FindAndModifyOptions.options().upsert(true).returnNew(true), EstadoPresencia.class);
+        } catch (DuplicateKeyException e) {
+            return mongoTemplate.findById(usuario, EstadoPresencia.class); // Otra instancia lo creó a la vez
+        }
+    }
+
+    // Migración al arrancar: crea el estado de los usuarios que aún no lo tienen (setOnInsert no pisa
+    // los existentes, así que es seguro aunque arranquen varias instancias) y recarga la ocupación
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void inicializarEstados() {
+        try {
+            List<UltimoFichaje> ultimos = mongoTemplate.aggregate(UltimoFichaje.agregacion(null),
+                    ControlPresencia.class, UltimoFichaje.class).getMappedResults();
+            for (int i = 0; i < ultimos.size(); i += 1000) {
+                BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, EstadoPresencia.class);
+                for (UltimoFichaje u : ultimos.subList(i, Math.min(i + 1000, ultimos.size()))) {
+                    bulk.upsert(new Query(Criteria.where("_id").is(u.getUsuario())),
+                            new Update().setOnInsert("tipo", u.getTipo()).setOnInsert("fechaHora", u.getFechaHora())
+                                    .setOnInsert("version", u.getSecuencia() == null ? 0L : u.getSecuencia()));
+                }
+                bulk.execute();
+            }
+            ocupacionService.sincronizar();
+        } catch (Exception e) {
+            System.err.println("No se pudo inicializar estado_presencia: " + e.getMessage());
+        }
+    }
+
+    // Cierre en bloque (reconciliación): mismo protocolo que fichar() para muchos usuarios a la vez.
+    // Inserta cada evento con secuencia = version + 1 (las secuencias ya ocupadas por un fichaje
+    // concurrente fallan sin afectar al resto) y avanza el estado de los que se escribieron.
+    // Devuelve los eventos realmente escritos.
+    public List<ControlPresencia> cerrarEnBloque(List<EstadoPresencia> estados, List<ControlPresencia> eventos) {
+        for (int i = 0; i < estados.size(); i++) {
+            eventos.get(i).setSecuencia(estados.get(i).getVersion() + 1);
+        }
+
+        Set<Integer> ocupadas = new HashSet<>();
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ControlPresencia.class).insert(eventos).execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != CLAVE_DUPLICADA) {
+                    throw e;
+                }
+                ocupadas.add(error.getIndex());
+            }
+        }
+
+        List<ControlPresencia> escritos = new ArrayList<>();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, EstadoPresencia.class);
+        for (int i = 0; i < estados.size(); i++) {
+            if (ocupadas.contains(i)) {
+                continue;
+            }
+            EstadoPresencia e = estados.get(i);
+            ControlPresencia evento = eventos.get(i);
+            bulk.updateOne(new Query(Criteria.where("_id").is(e.getId()).and("version").is(e.getVersion())),
+                    new Update().set("tipo", evento.getTipo()).set("fechaHora", evento.getFechaHora())
+                            .set("version", evento.getSecuencia()));
+            escritos.add(evento);
+        }
+        if (!escritos.isEmpty()) {
+            bulk.execute();
+        }
+        return escritos;
+    }
+}
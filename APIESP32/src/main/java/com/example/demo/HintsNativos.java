@@ -0,0 +1,44 @@
+package com.example.demo;
+
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+// Pistas de reflexión para la imagen nativa (perfil 'native') y el procesado AOT.
+// MongoDB mapea las entidades por reflexión sobre sus campos y Jackson (de)serializa por getters/setters;
+// en GraalVM todo eso tiene que declararse en tiempo de compilación.
+public class HintsNativos implements RuntimeHintsRegistrar {
+
+    // Documentos de MongoDB
+    private static final Class<?>[] DOCUMENTOS = {
+            ControlPresencia.class, Luz.class, Metereologia.class, SesionTrabajo.class, TarjetaRFID.class,
+            Usuario.class, EstadoPresencia.class, PausaTrabajo.class, ResumenDiario.class, ProyeccionUsuario.class,
+            ProyeccionCheckpoint.class, EstadoDispositivo.class
+    };
+
+    // Objetos que solo viajan como JSON
+    private static final Class<?>[] JSON = {
+            DatosSensorDTO.class, Alerta.class, ConsultaPaginadaService.Pagina.class, BufferSensor.Serie.class
+    };
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        for (Class<?> documento : DOCUMENTOS) {
+            hints.reflection().registerType(documento,
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                    MemberCategory.ACCESS_DECLARED_FIELDS,
+                    MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+
+        // Resultados de agregación mapeados por campo (sin setters)
+        hints.reflection().registerType(UltimoFichaje.class,
+                MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                MemberCategory.ACCESS_DECLARED_FIELDS);
+
+        // Serialización JSON (request/response): propiedades y tipos anidados
+        BindingReflectionHintsRegistrar binding = new BindingReflectionHintsRegistrar();
+        binding.registerReflectionHints(hints.reflection(), DOCUMENTOS);
+        binding.registerReflectionHints(hints.reflection(), JSON);
+    }
+}
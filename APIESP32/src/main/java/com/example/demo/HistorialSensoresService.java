@@ -0,0 +1,176 @@
+package com.example.demo;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+// Histórico reciente por dispositivo en memoria (BufferSensor). Lo alimenta POST /api/datos y se
+// precarga al arrancar con las últimas horas de metereologia_logs y luz_logs, de modo que las
+// gráficas de 1-24 h no tienen que materializar miles de documentos desde MongoDB.
+// El nombre del dispositivo lo envía la placa sin autenticar y cada buffer ocupa 'capacidad' muestras,
+// así que como mucho se mantienen 'max-dispositivos' buffers; el resto solo se guarda en MongoDB.
+// La clave es la de RegistroDispositivos (el nombre que envía la placa o "ip:<dirección>"); las
+// lecturas guardadas sin dispositivo no se pueden atribuir a una placa y no se precargan.
+@Service
+public class HistorialSensoresService {
+
+    // Lecturas de meteorología y luz de la misma petición se guardan con milisegundos de diferencia
+    private static final long MARGEN_EMPAREJADO_MS = 1000;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${historial.capacidad:17280}")
+    private int capacidad;
+
+    @Value("${historial.horas-precarga:24}")
+    private int horasPrecarga;
+
+    @Value("${historial.max-dispositivos:32}")
+    private int maxDispositivos;
+
+    private final Map<String, BufferSensor> buffers = new ConcurrentHashMap<>();
+    private volatile boolean avisoLleno;
+
+    // Las escrituras se hacen dentro de compute() para no perder muestras mientras se fusiona la precarga
+    public void registrar(String dispositivo, LocalDateTime fecha, Double temp, Double hum, Boolean luz) {
+        long tiempo = aMillis(fecha);
+        float t = temp == null ? Float.NaN : temp.floatValue();
+        float h = hum == null ? Float.NaN : hum.floatValue();
+        if (!buffers.containsKey(dispositivo) && buffers.size() >= maxDispositivos) {
+            avisarLleno(dispositivo);
+            return;
+        }
+        buffers.compute(dispositivo, (k, b) -> {
+            BufferSensor buffer = b == null ? new BufferSensor(k, capacidad) : b;
+            buffer.agregar(tiempo, t, h, luz);
+            return buffer;
+        });
+    }
+
+    // Muestras de las últimas 'horas'; si 'puntos' > 0 se reducen a ese número de intervalos.
+    // Sin dispositivo se usa la única placa con histórico, si solo hay una
+    public BufferSensor.Serie consultar(String dispositivo, double horas, Integer puntos) {
+        long hasta = System.currentTimeMillis() + 1;
+        long desde = hasta - (long) (horas * 3_600_000L);
+        String clave = dispositivo == null && buffers.size() == 1 ? buffers.keySet().iterator().next() : dispositivo;
+        BufferSensor buffer = clave == null ? null : buffers.get(clave);
+        if (buffer == null) {
+            return new BufferSensor.Serie(clave, new long[0], new float[0], new float[0], new float[0]);
+        }
+        return puntos != null && puntos > 0 ? buffer.reducir(desde, hasta, Math.min(puntos, capacidad)) : buffer.rango(desde, hasta);
+    }
+
+    public Set<String> dispositivos() {
+        return new TreeSet<>(buffers.keySet());
+    }
+
+    // Precarga: recorre ambas colecciones ordenadas por fecha con cursor y empareja luz y meteorología
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void precargar() {
+        LocalDateTime arranque = LocalDateTime.now();
+        LocalDateTime desde = arranque.minusHours(horasPrecarga);
+        Map<String, BufferSensor> historicos = new HashMap<>();
+
+        Query qMeteo = new Query(Criteria.where("fecha").gte(desde).lt(arranque))
+                .with(Sort.by("fecha")).cursorBatchSize(1000);
+        Query qLuz = new Query(Criteria.where("fecha").gte(desde).lt(arranque))
+                .with(Sort.by("fecha")).cursorBatchSize(1000);
+
+        try (Stream<Metereologia> meteo = mongoTemplate.stream(qMeteo, Metereologia.class);
+                Stream<Luz> luces = mongoTemplate.stream(qLuz, Luz.class)) {
+            Iterator<Metereologia> im = meteo.iterator();
+            Iterator<Luz> il = luces.iterator();
+            Metereologia m = im.hasNext() ? im.next() : null;
+            Luz l = il.hasNext() ? il.next() : null;
+
+            while (m != null || l != null) {
+                long tm = m == null ? Long.MAX_VALUE : aMillis(m.getFecha());
+                long tl = l == null ? Long.MAX_VALUE : aMillis(l.getFecha());
+                if (m != null && l != null && Math.abs(tm - tl) <= MARGEN_EMPAREJADO_MS
+                        && Objects.equals(m.getDispositivo(), l.getDispositivo())) {
+                    BufferSensor b = historico(historicos, m.getDispositivo());
+                    if (b != null) {
+                        b.agregar(Math.min(tm, tl), (float) m.getTemperatura(), (float) m.getHumedad(),
+                                l.isIluminadad());
+                    }
+                    m = im.hasNext() ? im.next() : null;
+                    l = il.hasNext() ? il.next() : null;
+                } else if (tm <= tl) {
+                    BufferSensor b = historico(historicos, m.getDispositivo());
+                    if (b != null) {
+                        b.agregar(tm, (float) m.getTemperatura(), (float) m.getHumedad(), null);
+                    }
+                    m = im.hasNext() ? im.next() : null;
+                } else {
+                    BufferSensor b = historico(historicos, l.getDispositivo());
+                    if (b != null) {
+                        b.agregar(tl, Float.NaN, Float.NaN, l.isIluminadad());
+                    }
+                    l = il.hasNext() ? il.next() : null;
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("No se pudo precargar el histórico de sensores: " + e.getMessage());
+            return;
+        }
+
+        // Lo recibido en vivo durante la precarga es más reciente: se añade detrás del histórico
+        int muestras = 0;
+        for (Map.Entry<String, BufferSensor> e : historicos.entrySet()) {
+            if (!buffers.containsKey(e.getKey()) && buffers.size() >= maxDispositivos) {
+                avisarLleno(e.getKey());
+                continue;
+            }
+            muestras += e.getValue().getTamano();
+            buffers.merge(e.getKey(), e.getValue(), (vivo, historico) -> {
+                historico.agregarTodo(vivo);
+                return historico;
+            });
+        }
+        System.out.println("📈 Histórico de sensores precargado: " + muestras + " muestras");
+    }
+
+    // Buffer de precarga del dispositivo; null si la lectura no tiene dispositivo o ya no caben más
+    private BufferSensor historico(Map<String, BufferSensor> historicos, String dispositivo) {
+        if (dispositivo == null || dispositivo.isBlank()) {
+            return null;
+        }
+        if (!historicos.containsKey(dispositivo) && historicos.size() >= maxDispositivos) {
+            avisarLleno(dispositivo);
+            return null;
+        }
+        return historicos.computeIfAbsent(dispositivo, k -> new BufferSensor(k, capacidad));
+    }
+
+    private void avisarLleno(String dispositivo) {
+        if (!avisoLleno) {
+            avisoLleno = true;
+            System.err.println("Histórico en memoria lleno (" + maxDispositivos + " dispositivos): " + dispositivo
+                    + " solo se guarda en MongoDB");
+        }
+    }
+
+    private static long aMillis(LocalDateTime fecha) {
+        return fecha.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
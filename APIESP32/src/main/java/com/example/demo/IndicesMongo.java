@@ -0,0 +1,95 @@
+package com.example.demo;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+// Crea (si no existen) los índices que necesitan las consultas paginadas y los filtros por usuario.
+// Se ejecuta en segundo plano para no retrasar el arranque si MongoDB tarda en responder, salvo el
+// índice único de secuencias de fichaje: de él depende que no se dupliquen fichajes, así que se crea
+// antes de aceptar peticiones y, si no se puede, la aplicación no arranca.
+@Component
+public class IndicesMongo {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    // false solo para entornos sin MongoDB (tests): el índice de secuencias pasa a crearse en segundo plano
+    @Value("${mongo.indice-secuencias.obligatorio:true}")
+    private boolean secuenciasObligatorio;
+
+    // Una transición por (usuario, secuencia): es lo que impide que dos instancias escriban el mismo
+    // fichaje (FichajeService). Parcial: los eventos anteriores y los INTENTO no tienen secuencia
+    @PostConstruct
+    public void crearIndiceSecuencias() {
+        if (!secuenciasObligatorio) {
+            return;
+        }
+        try {
+            indiceSecuencias();
+        } catch (Exception e) {
+            throw new IllegalStateException(
+                    "No se pudo crear el índice único de secuencias de fichaje: " + e.getMessage(), e);
+        }
+        System.out.println("🗂️ Índice único de secuencias de fichaje verificado");
+    }
+
+    private void indiceSecuencias() {
+        mongoTemplate.indexOps(ControlPresencia.class).createIndex(new Index()
+                .on("usuario", Sort.Direction.ASC).on("secuencia", Sort.Direction.ASC).unique()
+                .partial(PartialIndexFilter.of(Criteria.where("secuencia").exists(true))));
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void crearIndices() {
+        try {
+            mongoTemplate.indexOps(ControlPresencia.class).createIndex(new Index()
+                    .on("fechaHora", Sort.Direction.DESC).on("_id", Sort.Direction.DESC));
+            mongoTemplate.indexOps(ControlPresencia.class).createIndex(new Index()
+                    .on("usuario", Sort.Direction.ASC).on("fechaHora", Sort.Direction.DESC)
+                    .on("_id", Sort.Direction.DESC));
+            // Exportación de nóminas: recorre los fichajes por usuario y en orden cronológico
+            mongoTemplate.indexOps(ControlPresencia.class).createIndex(new Index()
+                    .on("usuario", Sort.Direction.ASC).on("fechaHora", Sort.Direction.ASC));
+            mongoTemplate.indexOps(TarjetaRFID.class).createIndex(new Index()
+                    .on("fecha", Sort.Direction.DESC).on("_id", Sort.Direction.DESC));
+            mongoTemplate.indexOps(EstadoPresencia.class).createIndex(new Index()
+                    .on("tipo", Sort.Direction.ASC).on("fechaHora", Sort.Direction.ASC));
+            mongoTemplate.indexOps(PausaTrabajo.class).createIndex(new Index()
+                    .on("usuario", Sort.Direction.ASC).on("inicio", Sort.Direction.ASC));
+            mongoTemplate.indexOps(ResumenDiario.class).createIndex(new Index()
+                    .on("usuario", Sort.Direction.ASC).on("fecha", Sort.Direction.ASC));
+            System.out.println("🗂️ Índices de MongoDB verificados");
+        } catch (Exception e) {
+            System.err.println("No se pudieron crear los índices: " + e.getMessage());
+        }
+
+        if (!secuenciasObligatorio) {
+            try {
+                indiceSecuencias();
+            } catch (Exception e) {
+                System.err.println("No se pudo crear el índice único de secuencias de fichaje: " + e.getMessage());
+            }
+        }
+
+        // Sesiones idempotentes por (usuario, inicio). Falla si ya hay duplicados antiguos en la colección
+        try {
+            mongoTemplate.indexOps(SesionTrabajo.class).createIndex(new Index()
+                    .on("usuario", Sort.Direction.ASC).on("inicio", Sort.Direction.ASC).unique());
+        } catch (Exception e) {
+            System.err.println("No se pudo crear el índice único de sesiones (¿duplicados previos?): "
+                    + e.getMessage());
+        }
+    }
+}
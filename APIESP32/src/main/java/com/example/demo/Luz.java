@@ -11,6 +11,7 @@ public class Luz {
     
     private boolean iluminadad;
     private LocalDateTime fecha;
+    private String dispositivo; // Placa que envió la lectura (null en registros antiguos)
 
     public Luz() {
         this.fecha = LocalDateTime.now();
@@ -37,6 +38,14 @@ public class Luz {
         this.iluminadad = iluminadad;
     }
 
+    public String getDispositivo() {
+        return dispositivo;
+    }
+
+    public void setDispositivo(String dispositivo) {
+        this.dispositivo = dispositivo;
+    }
+
     public LocalDateTime getFecha() {
         return fecha;
     }
@@ -12,6 +12,7 @@ public class Metereologia {
     private double temperatura;
     private double humedad;
     private LocalDateTime fecha;
+    private String dispositivo; // Placa que envió la lectura (null en registros antiguos)
 
     public Metereologia() {
         this.fecha = LocalDateTime.now();
@@ -47,6 +48,14 @@ public class Metereologia {
         this.humedad = humedad;
     }
 
+    public String getDispositivo() {
+        return dispositivo;
+    }
+
+    public void setDispositivo(String dispositivo) {
+        this.dispositivo = dispositivo;
+    }
+
     public LocalDateTime getFecha() {
         return fecha;
     }
@@ -0,0 +1,437 @@
+package com.example.demo;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+// Proyecciones derivadas del log de eventos (control_presencia): sesiones_trabajo, pausas_trabajo
+// y resumen_diario. Son el único sitio donde se escriben; los fichajes solo añaden eventos.
+// - Reconstrucción completa: los usuarios se reparten con fork/join entre todos los núcleos y cada
+//   uno se pliega por separado (PlegadoJornada), así que rehacer todo tras cambiar PoliticaJornada
+//   es una operación de minutos. Reescribe lo derivado de todos los usuarios con eventos, así que solo
+//   se lanza a mano (POST /api/proyecciones/reconstruir) o, si 'proyecciones.reconstruir-automatico'
+//   está activo, sola al detectar una política distinta de la del checkpoint.
+// - Primer arranque (sin checkpoint): no se recalcula nada. Lo existente se da por proyectado y el
+//   plegado de cada usuario parte de su último fichaje aceptado.
+// - Incremental: cada pocos segundos se pliegan los eventos con _id posterior al checkpoint, partiendo
+//   del estado guardado de cada usuario (proyeccion_usuario). Un evento con fecha anterior a lo ya
+//   plegado (p.ej. una corrección) hace que se rehaga solo ese usuario.
+// Solo avanza la instancia con el testigo del checkpoint (se renueva en cada lote); las demás esperan
+// a que caduque. El checkpoint es un _id (ObjectId, con la hora del reloj de la instancia que insertó):
+// solo se leen _id más antiguos que 'proyecciones.retraso', que debe superar tanto las inserciones en
+// vuelo como el desfase máximo entre relojes de las instancias; si no, un evento podría quedar por
+// detrás del checkpoint y no proyectarse nunca.
+@Service
+public class MotorProyecciones {
+
+    private static final String CHECKPOINT = "sesiones";
+    private static final Duration TESTIGO_INCREMENTAL = Duration.ofMinutes(1);
+    private static final Duration TESTIGO_RECONSTRUCCION = Duration.ofHours(1);
+
+    private final String instancia = new ObjectId().toHexString();
+    private final AtomicBoolean ocupado = new AtomicBoolean();
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private PoliticaJornada politica;
+
+    @Value("${proyecciones.lote:5000}")
+    private int tamanoLote;
+
+    @Value("${proyecciones.retraso:30s}")
+    private Duration retraso; // Margen para inserciones en vuelo y desfase de relojes entre instancias
+
+    @Value("${proyecciones.usuarios-por-tarea:32}")
+    private int usuariosPorTarea;
+
+    @Value("${proyecciones.reconstruir-automatico:false}")
+    private boolean reconstruirAutomatico;
+
+    private volatile String firmaAvisada; // Política distinta del checkpoint de la que ya se avisó
+
+    // ---------------------------------------------------------------- Reconstrucción completa
+
+    public Map<String, Object> reconstruir() {
+        if (!ocupado.compareAndSet(false, true)) {
+            throw new IllegalStateException("Ya hay una proyección en curso en esta instancia");
+        }
+        try {
+            return reconstruirConTestigo();
+        } finally {
+            ocupado.set(false);
+        }
+    }
+
+    private Map<String, Object> reconstruirConTestigo() {
+        if (adquirirTestigo(TESTIGO_RECONSTRUCCION) == null) {
+            throw new IllegalStateException("Otra instancia tiene el testigo de las proyecciones");
+        }
+        try {
+            long inicio = System.currentTimeMillis();
+            ObjectId limite = limite();
+
+            List<String> usuarios = mongoTemplate.findDistinct(
+                    new Query(Criteria.where("accesoPermitido").is(true).and("_id").lte(limite)),
+                    "usuario", ControlPresencia.class, String.class);
+
+            AtomicInteger sesiones = new AtomicInteger();
+            AtomicInteger pausas = new AtomicInteger();
+            int hilos = Runtime.getRuntime().availableProcessors();
+            ForkJoinPool pool = new ForkJoinPool(hilos);
+            try {
+                pool.invoke(new Particion(usuarios, 0, usuarios.size(), limite, sesiones, pausas));
+            } finally {
+                pool.shutdown();
+            }
+
+            // Las sesiones, pausas y totales de usuarios sin eventos (p.ej. las de antes de existir el log)
+            // no se pueden regenerar: se conservan. Solo sobra su estado de plegado
+            mongoTemplate.remove(new Query(Criteria.where("_id").nin(usuarios)), ProyeccionUsuario.class);
+
+            // Nuevo checkpoint y testigo liberado: lo posterior a 'limite' lo recoge el incremental
+            LocalDateTime ahora = LocalDateTime.now();
+            mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(CHECKPOINT).and("propietario").is(instancia)),
+                    new Update().set("ultimoId", limite.toHexString()).set("firmaPolitica", politica.firma())
+                            .set("ultimaReconstruccion", ahora).set("bloqueadoHasta", ahora),
+                    ProyeccionCheckpoint.class);
+
+            Map<String, Object> resultado = new LinkedHashMap<>();
+            resultado.put("politica", politica.firma());
+            resultado.put("usuarios", usuarios.size());
+            resultado.put("sesiones", sesiones.get());
+            resultado.put("pausas", pausas.get());
+            resultado.put("hilos", hilos);
+            resultado.put("milisegundos", System.currentTimeMillis() - inicio);
+            return resultado;
+        } catch (RuntimeException e) {
+            liberarTestigo(); // Que otra instancia (o la siguiente pasada) pueda reintentarlo ya
+            throw e;
+        }
+    }
+
+    // Divide la lista de usuarios hasta 'usuariosPorTarea' por tarea; los trozos se roban entre hilos
+    private class Particion extends RecursiveAction {
+        private final List<String> usuarios;
+        private final int desde;
+        private final int hasta;
+        private final ObjectId limite;
+        private final AtomicInteger sesiones;
+        private final AtomicInteger pausas;
+
+        Particion(List<String> usuarios, int desde, int hasta, ObjectId limite, AtomicInteger sesiones,
+                AtomicInteger pausas) {
+            this.usuarios = usuarios;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.limite = limite;
+            this.sesiones = sesiones;
+            this.pausas = pausas;
+        }
+
+        @Override
+        protected void compute() {
+            if (hasta - desde <= Math.max(1, usuariosPorTarea)) {
+                for (int i = desde; i < hasta; i++) {
+                    PlegadoJornada p = reconstruirUsuario(usuarios.get(i), limite);
+                    sesiones.addAndGet(p.getSesiones().size());
+                    pausas.addAndGet(p.getPausas().size());
+                }
+                return;
+            }
+            int medio = (desde + hasta) >>> 1;
+            invokeAll(new Particion(usuarios, desde, medio, limite, sesiones, pausas),
+                    new Particion(usuarios, medio, hasta, limite, sesiones, pausas));
+        }
+    }
+
+    // Pliega desde cero los eventos de un usuario con _id <= limite y sustituye todo lo derivado de él
+    private PlegadoJornada reconstruirUsuario(String usuario, ObjectId limite) {
+        PlegadoJornada plegado = new PlegadoJornada(usuario, politica);
+        Query eventos = new Query(Criteria.where("usuario").is(usuario).and("accesoPermitido").is(true)
+                .and("_id").lte(limite)).with(Sort.by(Sort.Direction.ASC, "fechaHora", "secuencia", "_id"))
+                .allowDiskUse(true);
+        try (Stream<ControlPresencia> stream = mongoTemplate.stream(eventos, ControlPresencia.class)) {
+            stream.forEach(plegado::aplicar);
+        }
+
+        Query delUsuario = new Query(Criteria.where("usuario").is(usuario));
+        mongoTemplate.remove(delUsuario, SesionTrabajo.class);
+        mongoTemplate.remove(delUsuario, PausaTrabajo.class);
+        if (!plegado.getSesiones().isEmpty()) {
+            mongoTemplate.insert(plegado.getSesiones(), SesionTrabajo.class);
+        }
+        if (!plegado.getPausas().isEmpty()) {
+            mongoTemplate.insert(plegado.getPausas(), PausaTrabajo.class);
+        }
+        guardarResumen(usuario, null,
+                PlegadoJornada.resumir(usuario, plegado.getSesiones(), plegado.getPausas(), politica));
+        mongoTemplate.save(plegado.estado());
+        return plegado;
+    }
+
+    // ---------------------------------------------------------------- Incremental
+
+    @Scheduled(fixedDelayString = "${proyecciones.intervalo-ms:2000}")
+    public void procesarPendientes() {
+        if (!ocupado.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            ProyeccionCheckpoint cp = adquirirTestigo(TESTIGO_INCREMENTAL);
+            if (cp == null) {
+                return; // Otra instancia avanza
+            }
+            if (cp.getUltimoId() == null) {
+                sembrarCheckpoint();
+                return;
+            }
+            if (!politica.firma().equals(cp.getFirmaPolitica())) {
+                if (reconstruirAutomatico) {
+                    System.out.println("🔁 Política de jornada cambiada (" + politica.firma()
+                            + "): reconstruyendo proyecciones");
+                    System.out.println("🔁 Proyecciones reconstruidas: " + reconstruirConTestigo());
+                    return;
+                }
+                if (!politica.firma().equals(firmaAvisada)) {
+                    firmaAvisada = politica.firma();
+                    System.err.println("⚠️ La política de jornada (" + politica.firma() + ") no es la de las "
+                            + "proyecciones (" + cp.getFirmaPolitica() + "): solo los eventos nuevos la usan. "
+                            + "Para aplicarla a todo: POST /api/proyecciones/reconstruir");
+                }
+            }
+            ObjectId limite = limite();
+            ObjectId posicion = new ObjectId(cp.getUltimoId());
+            int leidos;
+            int leidosTotal = 0;
+            do {
+                if (leidosTotal > 0 && adquirirTestigo(TESTIGO_INCREMENTAL) == null) {
+                    break; // Se perdió el testigo (caducó mientras se procesaba): lo continúa otra instancia
+                }
+                List<ControlPresencia> lote = mongoTemplate.find(new Query(Criteria.where("_id").gt(posicion)
+                        .lte(limite).and("accesoPermitido").is(true))
+                        .with(Sort.by(Sort.Direction.ASC, "_id")).limit(tamanoLote), ControlPresencia.class);
+                leidos = lote.size();
+                if (leidos == 0) {
+                    break;
+                }
+                leidosTotal += leidos;
+                posicion = new ObjectId(lote.get(leidos - 1).getId());
+                aplicarLote(lote, posicion);
+                boolean avanzado = mongoTemplate.updateFirst(
+                        new Query(Criteria.where("_id").is(CHECKPOINT).and("propietario").is(instancia)),
+                        new Update().set("ultimoId", posicion.toHexString()), ProyeccionCheckpoint.class)
+                        .getMatchedCount() > 0;
+                if (!avanzado) {
+                    break;
+                }
+            } while (leidos == tamanoLote);
+        } catch (Exception e) {
+            System.err.println("Error actualizando proyecciones: " + e.getMessage());
+        } finally {
+            ocupado.set(false);
+        }
+    }
+
+    private void aplicarLote(List<ControlPresencia> lote, ObjectId hasta) {
+        Map<String, List<ControlPresencia>> porUsuario = new HashMap<>();
+        for (ControlPresencia e : lote) {
+            if (e.getUsuario() != null && e.getFechaHora() != null) {
+                porUsuario.computeIfAbsent(e.getUsuario(), k -> new ArrayList<>()).add(e);
+            }
+        }
+        if (porUsuario.isEmpty()) {
+            return;
+        }
+
+        Map<String, ProyeccionUsuario> guardados = new HashMap<>();
+        for (ProyeccionUsuario p : mongoTemplate.find(new Query(Criteria.where("_id").in(porUsuario.keySet())),
+                ProyeccionUsuario.class)) {
+            guardados.put(p.getId(), p);
+        }
+
+        BulkOperations bulkSesiones = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SesionTrabajo.class);
+        BulkOperations bulkPausas = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PausaTrabajo.class);
+        BulkOperations bulkEstados = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ProyeccionUsuario.class);
+        int sesiones = 0;
+        int pausas = 0;
+        Map<String, LocalDate> diasAfectados = new HashMap<>();
+        List<String> rehacer = new ArrayList<>();
+
+        for (Map.Entry<String, List<ControlPresencia>> entrada : porUsuario.entrySet()) {
+            String usuario = entrada.getKey();
+            List<ControlPresencia> eventos = entrada.getValue();
+            eventos.sort(Comparator.comparing(ControlPresencia::getFechaHora)
+                    .thenComparing(ControlPresencia::getSecuencia, Comparator.nullsFirst(Comparator.naturalOrder()))
+                    .thenComparing(ControlPresencia::getId));
+
+            ProyeccionUsuario guardado = guardados.get(usuario);
+            PlegadoJornada plegado = guardado == null ? new PlegadoJornada(usuario, politica)
+                    : new PlegadoJornada(guardado, politica);
+            if (!plegado.admite(eventos.get(0))) {
+                rehacer.add(usuario); // Llega un evento con fecha pasada: no se puede plegar encima
+                continue;
+            }
+            eventos.forEach(plegado::aplicar);
+
+            for (SesionTrabajo s : plegado.getSesiones()) {
+                bulkSesiones.upsert(new Query(Criteria.where("usuario").is(usuario).and("inicio").is(s.getInicio())),
+                        new Update().set("fin", s.getFin()).set("duracionMinutos", s.getDuracionMinutos())
+                                .set("pendienteRevision", s.isPendienteRevision()));
+                sesiones++;
+                diasAfectados.merge(usuario, s.getInicio().toLocalDate(), (a, b) -> a.isBefore(b) ? a : b);
+            }
+            for (PausaTrabajo p : plegado.getPausas()) {
+                bulkPausas.upsert(new Query(Criteria.where("usuario").is(usuario).and("tipo").is(p.getTipo())
+                        .and("inicio").is(p.getInicio())),
+                        new Update().set("fin", p.getFin()).set("duracionMinutos", p.getDuracionMinutos()));
+                pausas++;
+                diasAfectados.merge(usuario, p.getInicio().toLocalDate(), (a, b) -> a.isBefore(b) ? a : b);
+            }
+            ProyeccionUsuario estado = plegado.estado();
+            bulkEstados.upsert(new Query(Criteria.where("_id").is(usuario)),
+                    new Update().set("estado", estado.getEstado()).set("desde", estado.getDesde())
+                            .set("ultimoEvento", estado.getUltimoEvento()));
+        }
+
+        if (sesiones > 0) {
+            bulkSesiones.execute();
+        }
+        if (pausas > 0) {
+            bulkPausas.execute();
+        }
+        if (porUsuario.size() > rehacer.size()) {
+            bulkEstados.execute();
+        }
+        for (Map.Entry<String, LocalDate> dia : diasAfectados.entrySet()) {
+            recalcularResumen(dia.getKey(), dia.getValue());
+        }
+        for (String usuario : rehacer) {
+            reconstruirUsuario(usuario, hasta);
+            System.out.println("🔁 Proyección de " + usuario + " rehecha por un evento fuera de orden");
+        }
+    }
+
+    // Rehace los totales diarios del usuario a partir de 'desde' con sus sesiones y pausas ya guardadas
+    private void recalcularResumen(String usuario, LocalDate desde) {
+        Query tramos = new Query(Criteria.where("usuario").is(usuario).and("inicio").gte(desde.atStartOfDay()));
+        List<SesionTrabajo> sesiones = mongoTemplate.find(tramos, SesionTrabajo.class);
+        List<PausaTrabajo> pausas = mongoTemplate.find(tramos, PausaTrabajo.class);
+
+        guardarResumen(usuario, desde, PlegadoJornada.resumir(usuario, sesiones, pausas, politica));
+    }
+
+    // Sustituye los totales del usuario desde 'desde' (null = todos) por 'dias'. Upsert por _id
+    // ("usuario|fecha") y borrado de los días sobrantes: repetirlo nunca duplica filas
+    private void guardarResumen(String usuario, LocalDate desde, Collection<ResumenDiario> dias) {
+        List<String> ids = new ArrayList<>(dias.size());
+        if (!dias.isEmpty()) {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ResumenDiario.class);
+            for (ResumenDiario r : dias) {
+                ids.add(r.getId());
+                bulk.upsert(new Query(Criteria.where("_id").is(r.getId())),
+                        new Update().set("usuario", r.getUsuario()).set("fecha", r.getFecha())
+                                .set("minutosTrabajo", r.getMinutosTrabajo()).set("minutosPausa", r.getMinutosPausa())
+                                .set("minutosMedico", r.getMinutosMedico()).set("sesiones", r.getSesiones()));
+            }
+            bulk.execute();
+        }
+        Criteria sobrantes = Criteria.where("usuario").is(usuario).and("_id").nin(ids);
+        if (desde != null) {
+            sobrantes = sobrantes.and("fecha").gte(desde);
+        }
+        mongoTemplate.remove(new Query(sobrantes), ResumenDiario.class);
+    }
+
+    // ---------------------------------------------------------------- Checkpoint
+
+    // Primer arranque: el checkpoint parte de 'limite' y el estado de plegado de cada usuario, de su último
+    // fichaje aceptado hasta ahí. setOnInsert no pisa estados existentes; no se borra ni reescribe nada
+    private void sembrarCheckpoint() {
+        ObjectId limite = limite();
+        List<UltimoFichaje> ultimos = mongoTemplate.aggregate(
+                UltimoFichaje.agregacion(Criteria.where("_id").lte(limite), null),
+                ControlPresencia.class, UltimoFichaje.class).getMappedResults();
+        for (int i = 0; i < ultimos.size(); i += 1000) {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ProyeccionUsuario.class);
+            for (UltimoFichaje u : ultimos.subList(i, Math.min(i + 1000, ultimos.size()))) {
+                String estado = politica.estadoTras(u.getTipo());
+                if (estado == null) {
+                    estado = PlegadoJornada.FUERA;
+                }
+                bulk.upsert(new Query(Criteria.where("_id").is(u.getUsuario())),
+                        new Update().setOnInsert("estado", estado)
+                                .setOnInsert("desde", PlegadoJornada.FUERA.equals(estado) ? null : u.getFechaHora())
+                                .setOnInsert("ultimoEvento", u.getFechaHora()));
+            }
+            bulk.execute();
+        }
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(CHECKPOINT).and("propietario").is(instancia)),
+                new Update().set("ultimoId", limite.toHexString()).set("firmaPolitica", politica.firma()),
+                ProyeccionCheckpoint.class);
+        System.out.println("🧭 Checkpoint de proyecciones creado (" + ultimos.size() + " usuarios); las sesiones "
+                + "existentes se conservan");
+    }
+
+    public ProyeccionCheckpoint obtenerCheckpoint() {
+        return mongoTemplate.findById(CHECKPOINT, ProyeccionCheckpoint.class);
+    }
+
+    // Toma (o renueva) el testigo si está libre, caducado o ya es nuestro; null si lo tiene otra instancia
+    private ProyeccionCheckpoint adquirirTestigo(Duration duracion) {
+        LocalDateTime ahora = LocalDateTime.now();
+        Query libre = new Query(Criteria.where("_id").is(CHECKPOINT).orOperator(
+                Criteria.where("propietario").is(instancia),
+                Criteria.where("bloqueadoHasta").lt(ahora),
+                Criteria.where("bloqueadoHasta").exists(false)));
+        try {
+            return mongoTemplate.findAndModify(libre,
+                    new Update().set("propietario", instancia).set("bloqueadoHasta", ahora.plus(duracion)),
+                    FindAndModifyOptions.options().upsert(true).returnNew(true), ProyeccionCheckpoint.class);
+        } catch (DuplicateKeyException e) {
+            return null; // Existe y lo tiene otra instancia
+        }
+    }
+
+    private void liberarTestigo() {
+        try {
+            mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(CHECKPOINT).and("propietario").is(instancia)),
+                    new Update().set("bloqueadoHasta", LocalDateTime.now()), ProyeccionCheckpoint.class);
+        } catch (Exception e) {
+            System.err.println("No se pudo liberar el testigo de las proyecciones: " + e.getMessage());
+        }
+    }
+
+    // _id mínimo posible para el instante (ahora - retraso): los ObjectId llevan la hora de inserción
+    private ObjectId limite() {
+        long segundos = System.currentTimeMillis() / 1000 - retraso.toSeconds();
+        return new ObjectId(String.format("%08x", segundos) + "0000000000000000");
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.demo;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+// Ocupación en vivo: último estado de cada usuario que NO está fuera (dentro, en pausa o en el médico).
+// Se mantiene con las mismas transiciones que registra FichajeService y se resincroniza
+// periódicamente desde estado_presencia (solo los usuarios dentro) para ver también los fichajes procesados
+// por otras instancias. Consultar quién está dentro es una lectura en memoria.
+@Service
+public class OcupacionService {
+
+    public static final String DENTRO = "DENTRO";
+    public static final String PAUSA = "PAUSA";
+    public static final String MEDICO = "MEDICO";
+
+    // Tipos con los que el usuario no queda fuera (los que estadoDe() no traduce a null)
+    private static final List<String> TIPOS_DENTRO =
+            List.of("ENTRADA", "FIN_PAUSA", "VUELTA_MEDICO", "INICIO_PAUSA", "CONSULTA");
+
+    public static class Estado {
+        private final String tipo; // Último tipo de fichaje (ENTRADA, INICIO_PAUSA, CONSULTA...)
+        private final LocalDateTime desde;
+
+        public Estado(String tipo, LocalDateTime desde) {
+            this.tipo = tipo;
+            this.desde = desde;
+        }
+
+        public String getTipo() { return tipo; }
+        public LocalDateTime getDesde() { return desde; }
+    }
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private final Map<String, Estado> estados = new ConcurrentHashMap<>();
+
+    // Traduce el tipo de fichaje al estado de ocupación; null si el usuario queda fuera
+    public static String estadoDe(String tipo) {
+        if ("ENTRADA".equals(tipo) || "FIN_PAUSA".equals(tipo) || "VUELTA_MEDICO".equals(tipo)) {
+            return DENTRO;
+        }
+        if ("INICIO_PAUSA".equals(tipo)) {
+            return PAUSA;
+        }
+        if ("CONSULTA".equals(tipo)) {
+            return MEDICO;
+        }
+        return null; // SALIDA o desconocido
+    }
+
+    // Aplica un fichaje aceptado. Si llega fuera de orden (más antiguo que el estado actual) se ignora
+    public void registrar(String usuario, String tipo, LocalDateTime fechaHora) {
+        if (estadoDe(tipo) == null) {
+            estados.computeIfPresent(usuario,
+                    (u, actual) -> actual.getDesde().isAfter(fechaHora) ? actual : null);
+        } else {
+            estados.merge(usuario, new Estado(tipo, fechaHora),
+                    (actual, nuevo) -> actual.getDesde().isAfter(nuevo.getDesde()) ? actual : nuevo);
+        }
+    }
+
+    public List<Map<String, Object>> obtenerActual() {
+        LocalDateTime ahora = LocalDateTime.now();
+        List<Map<String, Object>> resultado = new ArrayList<>(estados.size());
+        for (Map.Entry<String, Estado> e : new TreeMap<>(estados).entrySet()) {
+            Estado estado = e.getValue();
+            Map<String, Object> fila = new LinkedHashMap<>();
+            fila.put("usuario", e.getKey());
+            fila.put("estado", estadoDe(estado.getTipo()));
+            fila.put("tipo", estado.getTipo());
+            fila.put("desde", estado.getDesde());
+            fila.put("segundos", Duration.between(estado.getDesde(), ahora).getSeconds());
+            resultado.add(fila);
+        }
+        return resultado;
+    }
+
+    // Resincronización desde estado_presencia (lo llama también FichajeService al arrancar). No recorre
+    // toda la colección: lee los usuarios que están dentro (índice tipo + fechaHora) y, por _id, los que
+    // esta instancia tiene dentro y ya no aparecen (salieron por otra instancia). Cada documento pasa por
+    // registrar(), que compara fechaHora por usuario: una lectura anterior a un fichaje local no lo pisa
+    @Scheduled(fixedDelayString = "${ocupacion.sincronizar-ms:10000}", initialDelayString = "${ocupacion.sincronizar-ms:10000}")
+    public void sincronizar() {
+        try {
+            Set<String> dentro = new HashSet<>();
+            for (EstadoPresencia e : mongoTemplate.find(new Query(Criteria.where("tipo").in(TIPOS_DENTRO)),
+                    EstadoPresencia.class)) {
+                dentro.add(e.getId());
+                aplicar(e);
+            }
+            List<String> revisar = new ArrayList<>();
+            for (String usuario : estados.keySet()) {
+                if (!dentro.contains(usuario)) {
+                    revisar.add(usuario);
+                }
+            }
+            if (!revisar.isEmpty()) {
+                for (EstadoPresencia e : mongoTemplate.find(new Query(Criteria.where("_id").in(revisar)),
+                        EstadoPresencia.class)) {
+                    aplicar(e);
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("No se pudo sincronizar la ocupación: " + e.getMessage());
+        }
+    }
+
+    private void aplicar(EstadoPresencia e) {
+        if (e.getTipo() != null && e.getFechaHora() != null) {
+            registrar(e.getId(), e.getTipo(), e.getFechaHora());
+        }
+    }
+}
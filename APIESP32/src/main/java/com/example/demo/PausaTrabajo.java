@@ -0,0 +1,41 @@
+package com.example.demo;
+
+import java.time.LocalDateTime;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// Tramo de pausa o de consulta médica, derivado de control_presencia por MotorProyecciones
+@Document(collection = "pausas_trabajo")
+public class PausaTrabajo {
+    @Id
+    private String id;
+
+    private String usuario;
+    private String tipo; // "PAUSA", "MEDICO"
+    private LocalDateTime inicio;
+    private LocalDateTime fin;
+    private long duracionMinutos;
+
+    public PausaTrabajo() {}
+
+    public PausaTrabajo(String usuario, String tipo, LocalDateTime inicio, LocalDateTime fin, long duracionMinutos) {
+        this.usuario = usuario;
+        this.tipo = tipo;
+        this.inicio = inicio;
+        this.fin = fin;
+        this.duracionMinutos = duracionMinutos;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getUsuario() { return usuario; }
+    public void setUsuario(String usuario) { this.usuario = usuario; }
+    public String getTipo() { return tipo; }
+    public void setTipo(String tipo) { this.tipo = tipo; }
+    public LocalDateTime getInicio() { return inicio; }
+    public void setInicio(LocalDateTime inicio) { this.inicio = inicio; }
+    public LocalDateTime getFin() { return fin; }
+    public void setFin(LocalDateTime fin) { this.fin = fin; }
+    public long getDuracionMinutos() { return duracionMinutos; }
+    public void setDuracionMinutos(long duracionMinutos) { this.duracionMinutos = duracionMinutos; }
+}
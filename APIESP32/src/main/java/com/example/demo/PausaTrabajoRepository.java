@@ -0,0 +1,10 @@
+package com.example.demo;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface PausaTrabajoRepository extends MongoRepository<PausaTrabajo, String> {
+    List<PausaTrabajo> findByUsuario(String usuario);
+    List<PausaTrabajo> findByUsuarioAndInicioBetween(String usuario, LocalDateTime inicio, LocalDateTime fin);
+}
@@ -0,0 +1,111 @@
+package com.example.demo;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Plegado de los fichajes de un usuario (en orden de fechaHora) en tramos de trabajo y pausa.
+// No accede a la BD: MotorProyecciones le pasa los eventos y recoge los tramos cerrados.
+public class PlegadoJornada {
+
+    public static final String FUERA = "FUERA";
+    public static final String TRABAJANDO = "TRABAJANDO";
+    public static final String PAUSA = "PAUSA";
+    public static final String MEDICO = "MEDICO";
+
+    private final String usuario;
+    private final PoliticaJornada politica;
+
+    private String estado = FUERA;
+    private LocalDateTime desde;
+    private LocalDateTime ultimoEvento;
+
+    private final List<SesionTrabajo> sesiones = new ArrayList<>();
+    private final List<PausaTrabajo> pausas = new ArrayList<>();
+
+    public PlegadoJornada(String usuario, PoliticaJornada politica) {
+        this.usuario = usuario;
+        this.politica = politica;
+    }
+
+    // Continúa desde un estado guardado (proyección incremental)
+    public PlegadoJornada(ProyeccionUsuario guardado, PoliticaJornada politica) {
+        this(guardado.getId(), politica);
+        this.estado = guardado.getEstado() == null ? FUERA : guardado.getEstado();
+        this.desde = guardado.getDesde();
+        this.ultimoEvento = guardado.getUltimoEvento();
+    }
+
+    public void aplicar(ControlPresencia evento) {
+        if (!evento.isAccesoPermitido() || evento.getFechaHora() == null) {
+            return;
+        }
+        String nuevo = politica.estadoTras(evento.getTipo());
+        if (nuevo == null) {
+            return;
+        }
+        ultimoEvento = evento.getFechaHora();
+        if (nuevo.equals(estado)) {
+            return; // Fichaje repetido (p.ej. dos ENTRADA): el tramo sigue desde el primero
+        }
+
+        if (desde != null) {
+            LocalDateTime fin = evento.getFechaHora();
+            long minutos = ChronoUnit.MINUTES.between(desde, fin);
+            if (TRABAJANDO.equals(estado)) {
+                SesionTrabajo sesion = new SesionTrabajo(usuario, desde, fin, minutos);
+                // Las salidas que pone la reconciliación nocturna son una estimación del horario
+                sesion.setPendienteRevision(
+                        ReconciliacionSesionesService.METODO_AUTO_CIERRE.equals(evento.getMetodoAuth()));
+                sesiones.add(sesion);
+            } else if (PAUSA.equals(estado) || MEDICO.equals(estado)) {
+                pausas.add(new PausaTrabajo(usuario, estado, desde, fin, minutos));
+            }
+        }
+        estado = nuevo;
+        desde = FUERA.equals(nuevo) ? null : evento.getFechaHora();
+    }
+
+    // Eventos más antiguos que el último aplicado no se pueden plegar encima: hay que rehacer el usuario
+    public boolean admite(ControlPresencia evento) {
+        return ultimoEvento == null || evento.getFechaHora() == null || !evento.getFechaHora().isBefore(ultimoEvento);
+    }
+
+    public ProyeccionUsuario estado() {
+        ProyeccionUsuario p = new ProyeccionUsuario();
+        p.setId(usuario);
+        p.setEstado(estado);
+        p.setDesde(desde);
+        p.setUltimoEvento(ultimoEvento);
+        return p;
+    }
+
+    public List<SesionTrabajo> getSesiones() { return sesiones; }
+    public List<PausaTrabajo> getPausas() { return pausas; }
+
+    // Totales por día (el tramo se imputa al día en que empieza)
+    public static Collection<ResumenDiario> resumir(String usuario, Collection<SesionTrabajo> sesiones,
+            Collection<PausaTrabajo> pausas, PoliticaJornada politica) {
+        Map<LocalDate, ResumenDiario> dias = new TreeMap<>();
+        for (SesionTrabajo s : sesiones) {
+            ResumenDiario r = dias.computeIfAbsent(s.getInicio().toLocalDate(), f -> new ResumenDiario(usuario, f));
+            r.setMinutosTrabajo(r.getMinutosTrabajo() + s.getDuracionMinutos());
+            r.setSesiones(r.getSesiones() + 1);
+        }
+        for (PausaTrabajo p : pausas) {
+            ResumenDiario r = dias.computeIfAbsent(p.getInicio().toLocalDate(), f -> new ResumenDiario(usuario, f));
+            if (MEDICO.equals(p.getTipo())) {
+                r.setMinutosMedico(r.getMinutosMedico() + p.getDuracionMinutos());
+            } else {
+                r.setMinutosPausa(r.getMinutosPausa() + p.getDuracionMinutos());
+            }
+            r.setMinutosTrabajo(r.getMinutosTrabajo() + politica.minutosComputables(p));
+        }
+        return dias.values();
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.demo;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Reglas con las que MotorProyecciones convierte los fichajes en sesiones, pausas y totales.
+// Es la única fuente de estas reglas: cambiarla y reconstruir recalcula todo el histórico.
+//   ENTRADA, FIN_PAUSA, VUELTA_MEDICO -> TRABAJANDO
+//   INICIO_PAUSA                      -> PAUSA
+//   CONSULTA                          -> MEDICO
+//   SALIDA                            -> FUERA
+// Salir de TRABAJANDO cierra una SesionTrabajo; salir de PAUSA/MEDICO cierra una PausaTrabajo.
+@Component
+public class PoliticaJornada {
+
+    private final boolean pausaComputa; // true = los minutos de pausa suman al trabajo del día
+    private final boolean medicoComputa; // true = la consulta médica cuenta como tiempo trabajado
+
+    public PoliticaJornada(
+            @Value("${jornada.pausa-computa:false}") boolean pausaComputa,
+            @Value("${jornada.medico-computa:true}") boolean medicoComputa) {
+        this.pausaComputa = pausaComputa;
+        this.medicoComputa = medicoComputa;
+    }
+
+    // Estado al que lleva cada tipo de fichaje; null = no afecta a la jornada (INTENTO, desconocidos)
+    public String estadoTras(String tipo) {
+        if (tipo == null) {
+            return null;
+        }
+        switch (tipo) {
+            case "ENTRADA":
+            case "FIN_PAUSA":
+            case "VUELTA_MEDICO":
+                return PlegadoJornada.TRABAJANDO;
+            case "INICIO_PAUSA":
+                return PlegadoJornada.PAUSA;
+            case "CONSULTA":
+                return PlegadoJornada.MEDICO;
+            case "SALIDA":
+                return PlegadoJornada.FUERA;
+            default:
+                return null;
+        }
+    }
+
+    // Minutos que suma un tramo de pausa al trabajo del día según su tipo
+    public long minutosComputables(PausaTrabajo pausa) {
+        boolean computa = PlegadoJornada.MEDICO.equals(pausa.getTipo()) ? medicoComputa : pausaComputa;
+        return computa ? pausa.getDuracionMinutos() : 0;
+    }
+
+    // Identifica la política vigente: si no coincide con la del checkpoint, hay que reconstruir
+    public String firma() {
+        return "v1;pausaComputa=" + pausaComputa + ";medicoComputa=" + medicoComputa;
+    }
+}
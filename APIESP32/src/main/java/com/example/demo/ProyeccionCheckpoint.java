@@ -0,0 +1,34 @@
+package com.example.demo;
+
+import java.time.LocalDateTime;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// Posición de la proyección en el log de eventos (control_presencia) y testigo de ejecución:
+// solo la instancia que tiene el testigo (propietario, hasta 'bloqueadoHasta') avanza la proyección
+@Document(collection = "proyeccion_checkpoint")
+public class ProyeccionCheckpoint {
+    @Id
+    private String id;
+
+    private String ultimoId; // _id (ObjectId hex) del último evento procesado; los posteriores están pendientes
+    private String firmaPolitica; // PoliticaJornada.firma() con la que se construyeron las proyecciones
+    private LocalDateTime ultimaReconstruccion;
+    private String propietario;
+    private LocalDateTime bloqueadoHasta;
+
+    public ProyeccionCheckpoint() {}
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getUltimoId() { return ultimoId; }
+    public void setUltimoId(String ultimoId) { this.ultimoId = ultimoId; }
+    public String getFirmaPolitica() { return firmaPolitica; }
+    public void setFirmaPolitica(String firmaPolitica) { this.firmaPolitica = firmaPolitica; }
+    public LocalDateTime getUltimaReconstruccion() { return ultimaReconstruccion; }
+    public void setUltimaReconstruccion(LocalDateTime ultimaReconstruccion) { this.ultimaReconstruccion = ultimaReconstruccion; }
+    public String getPropietario() { return propietario; }
+    public void setPropietario(String propietario) { this.propietario = propietario; }
+    public LocalDateTime getBloqueadoHasta() { return bloqueadoHasta; }
+    public void setBloqueadoHasta(LocalDateTime bloqueadoHasta) { this.bloqueadoHasta = bloqueadoHasta; }
+}
@@ -0,0 +1,27 @@
+package com.example.demo;
+
+import java.time.LocalDateTime;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// Estado del plegado de eventos de un usuario, para continuar la proyección de forma incremental
+@Document(collection = "proyeccion_usuario")
+public class ProyeccionUsuario {
+    @Id
+    private String id; // Username
+
+    private String estado; // PlegadoJornada.FUERA, TRABAJANDO, PAUSA, MEDICO
+    private LocalDateTime desde; // Inicio del tramo abierto
+    private LocalDateTime ultimoEvento; // fechaHora del último evento aplicado
+
+    public ProyeccionUsuario() {}
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getEstado() { return estado; }
+    public void setEstado(String estado) { this.estado = estado; }
+    public LocalDateTime getDesde() { return desde; }
+    public void setDesde(LocalDateTime desde) { this.desde = desde; }
+    public LocalDateTime getUltimoEvento() { return ultimoEvento; }
+    public void setUltimoEvento(LocalDateTime ultimoEvento) { this.ultimoEvento = ultimoEvento; }
+}
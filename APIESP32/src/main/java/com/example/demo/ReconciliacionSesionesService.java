@@ -0,0 +1,166 @@
+package com.example.demo;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+// Reconciliación nocturna de jornadas sin cerrar (usuarios que olvidan fichar la salida).
+// 1. Una consulta sobre estado_presencia obtiene los usuarios que siguen "dentro" (o en
+//    pausa/médico) desde antes del corte.
+// 2. Los usuarios se reparten en lotes que se procesan en paralelo con un pool acotado;
+//    cada lote carga sus Usuario con una sola consulta y escribe con operaciones bulk.
+//    Si la salida que le corresponde según su horario aún no ha llegado al corte (turno de noche
+//    en curso: entra a las 22:05 y sale a las 06:00), se deja abierto para la próxima ejecución.
+// 3. Cada estado se cierra con una SALIDA AUTO_CIERRE a la hora de fin de su horario, con el mismo
+//    protocolo que un fichaje (evento con secuencia y luego compare-and-set), así que no pisa un
+//    fichaje que llegue a la vez. MotorProyecciones convierte esa salida en una SesionTrabajo
+//    marcada como pendiente de revisión.
+@Service
+public class ReconciliacionSesionesService {
+
+    public static final String METODO_AUTO_CIERRE = "AUTO_CIERRE";
+
+    private static final LocalTime FIN_POR_DEFECTO = LocalTime.of(18, 0);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private UsuarioRepository usuarioRepository;
+
+    @Autowired
+    private OcupacionService ocupacionService;
+
+    @Autowired
+    private FichajeService fichajeService;
+
+    @Value("${reconciliacion.lote:500}")
+    private int tamanoLote;
+
+    @Value("${reconciliacion.hilos:4}")
+    private int hilos;
+
+    @Scheduled(cron = "${reconciliacion.cron:0 0 3 * * *}")
+    public void reconciliacionNocturna() {
+        try {
+            Map<String, Object> resultado = reconciliar(LocalDate.now().atStartOfDay());
+            System.out.println("🌙 Reconciliación nocturna: " + resultado);
+        } catch (Exception e) {
+            System.err.println("Error en la reconciliación nocturna: " + e.getMessage());
+        }
+    }
+
+    // Cierra los estados abiertos cuyo último fichaje y cuya salida según horario son anteriores a 'corte'
+    public Map<String, Object> reconciliar(LocalDateTime corte) throws Exception {
+        long inicio = System.currentTimeMillis();
+
+        List<EstadoPresencia> pendientes = mongoTemplate.find(new Query(Criteria.where("tipo")
+                .in("ENTRADA", "FIN_PAUSA", "VUELTA_MEDICO", "INICIO_PAUSA", "CONSULTA")
+                .and("fechaHora").lt(corte)), EstadoPresencia.class);
+
+        AtomicInteger salidas = new AtomicInteger();
+        AtomicInteger enCurso = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, hilos));
+        try {
+            List<Future<?>> tareas = new ArrayList<>();
+            for (int i = 0; i < pendientes.size(); i += tamanoLote) {
+                List<EstadoPresencia> lote = pendientes.subList(i, Math.min(i + tamanoLote, pendientes.size()));
+                tareas.add(pool.submit(() -> procesarLote(lote, corte, salidas, enCurso)));
+            }
+            for (Future<?> tarea : tareas) {
+                tarea.get(); // Propaga el primer error de cualquier lote
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("corte", corte);
+        resultado.put("usuariosCerrados", salidas.get());
+        resultado.put("turnosEnCurso", enCurso.get());
+        resultado.put("milisegundos", System.currentTimeMillis() - inicio);
+        return resultado;
+    }
+
+    private void procesarLote(List<EstadoPresencia> lote, LocalDateTime corte, AtomicInteger salidas,
+            AtomicInteger enCurso) {
+        List<String> nombres = new ArrayList<>(lote.size());
+        for (EstadoPresencia e : lote) {
+            nombres.add(e.getId());
+        }
+        Map<String, String> horarios = new HashMap<>();
+        for (Usuario u : usuarioRepository.findByUsernameIn(nombres)) {
+            horarios.put(u.getUsername(), u.getHorario());
+        }
+
+        List<EstadoPresencia> vencidos = new ArrayList<>(lote.size());
+        List<ControlPresencia> cierres = new ArrayList<>(lote.size());
+        for (EstadoPresencia e : lote) {
+            String horario = horarios.get(e.getId());
+            LocalDateTime salida = horaDeSalida(e.getFechaHora(), horario);
+            if (salida.isAfter(corte)) {
+                enCurso.incrementAndGet(); // Su turno aún no ha terminado: no se inventa una salida futura
+                continue;
+            }
+            vencidos.add(e);
+            cierres.add(new ControlPresencia(e.getId(), salida, METODO_AUTO_CIERRE, "SALIDA", true,
+                    "Cierre automático según horario " + (horario == null ? "por defecto" : horario)
+                            + " (pendiente de revisión)"));
+        }
+        if (vencidos.isEmpty()) {
+            return;
+        }
+
+        // Evento y estado con el mismo protocolo que un fichaje: si un fichaje concurrente ocupó ya
+        // la transición de un usuario, su cierre no se escribe
+        List<ControlPresencia> escritos = fichajeService.cerrarEnBloque(vencidos, cierres);
+        for (ControlPresencia cierre : escritos) {
+            ocupacionService.registrar(cierre.getUsuario(), cierre.getTipo(), cierre.getFechaHora());
+        }
+        salidas.addAndGet(escritos.size());
+    }
+
+    // Fin de jornada del horario ("09:00 - 18:00") el día de la entrada. Si el horario cruza la
+    // medianoche el fin es al día siguiente; si la entrada fue posterior al fin, se cierra en la entrada.
+    static LocalDateTime horaDeSalida(LocalDateTime entrada, String horario) {
+        LocalTime inicioJornada = null;
+        LocalTime finJornada = FIN_POR_DEFECTO;
+        if (horario != null) {
+            String[] partes = horario.split("-");
+            try {
+                if (partes.length == 2) {
+                    inicioJornada = LocalTime.parse(partes[0].trim());
+                    finJornada = LocalTime.parse(partes[1].trim());
+                }
+            } catch (DateTimeParseException e) {
+                inicioJornada = null;
+                finJornada = FIN_POR_DEFECTO;
+            }
+        }
+
+        LocalDateTime salida = entrada.toLocalDate().atTime(finJornada);
+        if (inicioJornada != null && finJornada.isBefore(inicioJornada) && !entrada.toLocalTime().isBefore(inicioJornada)) {
+            salida = salida.plusDays(1);
+        }
+        return salida.isBefore(entrada) ? entrada : salida;
+    }
+}
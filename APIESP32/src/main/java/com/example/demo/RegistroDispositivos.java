@@ -0,0 +1,290 @@
+package com.example.demo;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+// Registro de las placas que llaman a POST /api/datos: IP, última conexión, ritmo de peticiones y
+// último error. Cada petición solo toca su entrada en memoria (volátiles y LongAdder, sin bloqueos);
+// cada 'volcado-ms' las entradas modificadas se escriben en 'dispositivos' con un único bulk.
+// En ese mismo paso se detectan las placas que llevan más de 'desconexion' sin llamar y se emite
+// una alerta (y otra cuando vuelven). Con varias instancias, la última conexión se combina con $max
+// y se relee de la colección para no dar por caída una placa que habla con otra instancia.
+// El nombre del dispositivo lo envía la placa sin autenticar: como mucho se registran 'max' placas
+// (cada una se persiste y vigila), y las peticiones de nombres nuevos por encima de eso se ignoran.
+@Component
+public class RegistroDispositivos {
+
+    private static final double SUAVIZADO = 0.3; // Peso de la última medida en el ritmo de peticiones
+
+    private static class Entrada {
+        final String id;
+        final LongAdder peticiones = new LongAdder();
+        final LongAdder errores = new LongAdder();
+        final AtomicBoolean desconectado = new AtomicBoolean();
+        volatile String ip;
+        volatile long primeraMs;
+        volatile long ultimaMs;
+        volatile String ultimoError;
+        volatile long ultimoErrorMs;
+        volatile boolean sucio;
+
+        // Solo los usa el hilo de volcado
+        long base; // Peticiones ya contadas antes de arrancar (leídas de la colección)
+        long peticionesVolcadas;
+        long erroresVolcados;
+        long peticionesEnVuelo; // Totales incluidos en el bulk en curso: pasan a 'volcadas' si se escribe
+        long erroresEnVuelo;
+        long peticionesMedidas;
+        long ultimoVolcadoMs;
+        double porMinuto;
+
+        Entrada(String id) {
+            this.id = id;
+        }
+    }
+
+    private final Map<String, Entrada> entradas = new ConcurrentHashMap<>();
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private AlertaService alertaService;
+
+    @Value("${dispositivos.desconexion:2m}")
+    private Duration desconexion;
+
+    @Value("${dispositivos.max:64}")
+    private int maxDispositivos;
+
+    private volatile boolean avisoLleno;
+
+    // Identidad de la placa en toda la ingesta (registro, estadísticas e histórico). Idempotente
+    public static String clave(String dispositivo, String ip) {
+        return dispositivo == null || dispositivo.isBlank() ? "ip:" + ip : dispositivo;
+    }
+
+    // Llamada por cada POST /api/datos
+    public void registrar(String dispositivo, String ip) {
+        long ahora = System.currentTimeMillis();
+        Entrada e = entrada(clave(dispositivo, ip));
+        if (e == null) {
+            return;
+        }
+        if (e.primeraMs == 0) {
+            e.primeraMs = ahora;
+        }
+        e.ip = ip;
+        e.ultimaMs = ahora;
+        e.peticiones.increment();
+        e.sucio = true;
+        if (e.desconectado.compareAndSet(true, false)) {
+            alertaService.emitir(new Alerta("DISPOSITIVO_RECONECTADO", e.id, "Vuelve a enviar datos desde " + ip,
+                    null));
+        }
+    }
+
+    public void registrarError(String dispositivo, String ip, String error) {
+        Entrada e = entrada(clave(dispositivo, ip));
+        if (e == null) {
+            return;
+        }
+        e.ultimoError = error;
+        e.ultimoErrorMs = System.currentTimeMillis();
+        e.errores.increment();
+        e.sucio = true;
+    }
+
+    // Entrada de la placa, creándola si aún cabe; null si el registro está lleno
+    private Entrada entrada(String clave) {
+        Entrada e = entradas.get(clave);
+        if (e != null) {
+            return e;
+        }
+        if (entradas.size() >= maxDispositivos) {
+            if (!avisoLleno) {
+                avisoLleno = true;
+                System.err.println("Registro de dispositivos lleno (" + maxDispositivos + "): se ignora " + clave);
+            }
+            return null;
+        }
+        return entradas.computeIfAbsent(clave, Entrada::new);
+    }
+
+    // Estado actual de todas las placas conocidas, ordenadas por nombre
+    public List<EstadoDispositivo> obtenerTodos() {
+        long ahora = System.currentTimeMillis();
+        List<EstadoDispositivo> lista = new ArrayList<>(entradas.size());
+        for (Entrada e : entradas.values()) {
+            EstadoDispositivo d = new EstadoDispositivo();
+            d.setId(e.id);
+            d.setIp(e.ip);
+            d.setPrimeraConexion(aFecha(e.primeraMs));
+            d.setUltimaConexion(aFecha(e.ultimaMs));
+            d.setPeticiones(e.base + e.peticiones.sum());
+            d.setPeticionesPorMinuto(Math.round(e.porMinuto * 100) / 100.0);
+            d.setErrores(e.errores.sum());
+            d.setUltimoError(e.ultimoError);
+            d.setFechaUltimoError(aFecha(e.ultimoErrorMs));
+            d.setEnLinea(enLinea(e, ahora));
+            lista.add(d);
+        }
+        lista.sort(Comparator.comparing(EstadoDispositivo::getId));
+        return lista;
+    }
+
+    @Scheduled(fixedDelayString = "${dispositivos.volcado-ms:5000}")
+    public void volcar() {
+        volcar(true);
+    }
+
+    private void volcar(boolean combinar) {
+        long ahora = System.currentTimeMillis();
+        BulkOperations bulk = null;
+        List<Entrada> escritas = new ArrayList<>();
+        for (Entrada e : entradas.values()) {
+            // Ritmo de peticiones: media móvil de lo recibido entre dos volcados
+            long peticiones = e.peticiones.sum();
+            if (e.ultimoVolcadoMs > 0 && ahora > e.ultimoVolcadoMs) {
+                double medida = (peticiones - e.peticionesMedidas) * 60000.0 / (ahora - e.ultimoVolcadoMs);
+                e.porMinuto = SUAVIZADO * medida + (1 - SUAVIZADO) * e.porMinuto;
+            }
+            e.peticionesMedidas = peticiones;
+            e.ultimoVolcadoMs = ahora;
+
+            if (!enLinea(e, ahora) && e.ultimaMs > 0 && e.desconectado.compareAndSet(false, true)) {
+                alertaService.emitir(new Alerta("DISPOSITIVO_DESCONECTADO", e.id, "Sin datos desde "
+                        + aFecha(e.ultimaMs) + " (" + e.ip + ")", null));
+                e.sucio = true;
+            }
+            if (!e.sucio) {
+                continue;
+            }
+            e.sucio = false; // Antes de leer los campos: un registro concurrente volverá a marcarla
+
+            long errores = e.errores.sum();
+            Update update = new Update()
+                    .set("ip", e.ip)
+                    .inc("peticiones", peticiones - e.peticionesVolcadas)
+                    .inc("errores", errores - e.erroresVolcados)
+                    .set("peticionesPorMinuto", e.porMinuto)
+                    .set("enLinea", !e.desconectado.get());
+            if (e.ultimaMs > 0) {
+                update.max("ultimaConexion", aFecha(e.ultimaMs)).min("primeraConexion", aFecha(e.primeraMs));
+            }
+            if (e.ultimoError != null) {
+                update.set("ultimoError", e.ultimoError).set("fechaUltimoError", aFecha(e.ultimoErrorMs));
+            }
+            if (bulk == null) {
+                bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, EstadoDispositivo.class);
+            }
+            bulk.upsert(new Query(Criteria.where("_id").is(e.id)), update);
+            e.peticionesEnVuelo = peticiones;
+            e.erroresEnVuelo = errores;
+            escritas.add(e);
+        }
+
+        try {
+            if (bulk != null) {
+                bulk.execute();
+                for (Entrada e : escritas) {
+                    e.peticionesVolcadas = e.peticionesEnVuelo;
+                    e.erroresVolcados = e.erroresEnVuelo;
+                }
+            }
+            if (combinar) {
+                combinarConexiones();
+            }
+        } catch (Exception ex) {
+            // Lo no escrito se reintenta en el siguiente volcado
+            for (Entrada e : escritas) {
+                e.sucio = true;
+            }
+            System.err.println("Error volcando el registro de dispositivos: " + ex.getMessage());
+        }
+    }
+
+    // Última conexión vista por cualquier instancia (y placas conocidas que aún no han llamado a esta)
+    private void combinarConexiones() {
+        Query query = new Query();
+        query.fields().include("ip").include("ultimaConexion").include("primeraConexion").include("peticiones");
+        for (EstadoDispositivo d : mongoTemplate.find(query, EstadoDispositivo.class)) {
+            if (d.getUltimaConexion() == null) {
+                continue;
+            }
+            long ultima = aMillis(d.getUltimaConexion());
+            if (!entradas.containsKey(d.getId()) && entradas.size() >= maxDispositivos) {
+                continue;
+            }
+            Entrada e = entradas.computeIfAbsent(d.getId(), id -> {
+                Entrada nueva = new Entrada(id);
+                nueva.base = d.getPeticiones();
+                nueva.ip = d.getIp();
+                nueva.primeraMs = d.getPrimeraConexion() == null ? ultima : aMillis(d.getPrimeraConexion());
+                nueva.desconectado.set(System.currentTimeMillis() - ultima > desconexion.toMillis());
+                return nueva;
+            });
+            if (ultima > e.ultimaMs) {
+                e.ultimaMs = ultima;
+                e.ip = d.getIp();
+                if (System.currentTimeMillis() - ultima <= desconexion.toMillis()) {
+                    e.desconectado.set(false); // Sigue llamando, aunque sea a otra instancia
+                }
+            }
+        }
+    }
+
+    // Al arrancar se cargan las placas conocidas: si alguna no vuelve a llamar, también se detecta
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargarConocidos() {
+        try {
+            combinarConexiones();
+            System.out.println("📡 Dispositivos conocidos: " + entradas.size());
+        } catch (Exception e) {
+            System.err.println("No se pudo cargar el registro de dispositivos: " + e.getMessage());
+        }
+    }
+
+    // Al parar solo se escribe lo pendiente (sin releer la colección)
+    @PreDestroy
+    public void alCerrar() {
+        volcar(false);
+    }
+
+    private boolean enLinea(Entrada e, long ahora) {
+        return e.ultimaMs > 0 && ahora - e.ultimaMs <= desconexion.toMillis();
+    }
+
+    private static LocalDateTime aFecha(long millis) {
+        return millis == 0 ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    private static long aMillis(LocalDateTime fecha) {
+        return fecha.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.demo;
+
+import java.time.LocalDate;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// Totales por usuario y día (según PoliticaJornada), derivados por MotorProyecciones
+@Document(collection = "resumen_diario")
+public class ResumenDiario {
+    @Id
+    private String id; // "usuario|yyyy-MM-dd"
+
+    private String usuario;
+    private LocalDate fecha;
+    private long minutosTrabajo; // Incluye pausa/médico si la política los computa
+    private long minutosPausa;
+    private long minutosMedico;
+    private int sesiones;
+
+    public ResumenDiario() {}
+
+    public ResumenDiario(String usuario, LocalDate fecha) {
+        this.id = usuario + "|" + fecha;
+        this.usuario = usuario;
+        this.fecha = fecha;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getUsuario() { return usuario; }
+    public void setUsuario(String usuario) { this.usuario = usuario; }
+    public LocalDate getFecha() { return fecha; }
+    public void setFecha(LocalDate fecha) { this.fecha = fecha; }
+    public long getMinutosTrabajo() { return minutosTrabajo; }
+    public void setMinutosTrabajo(long minutosTrabajo) { this.minutosTrabajo = minutosTrabajo; }
+    public long getMinutosPausa() { return minutosPausa; }
+    public void setMinutosPausa(long minutosPausa) { this.minutosPausa = minutosPausa; }
+    public long getMinutosMedico() { return minutosMedico; }
+    public void setMinutosMedico(long minutosMedico) { this.minutosMedico = minutosMedico; }
+    public int getSesiones() { return sesiones; }
+    public void setSesiones(int sesiones) { this.sesiones = sesiones; }
+}
@@ -0,0 +1,10 @@
+package com.example.demo;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import java.time.LocalDate;
+import java.util.List;
+
+public interface ResumenDiarioRepository extends MongoRepository<ResumenDiario, String> {
+    List<ResumenDiario> findByUsuarioOrderByFechaAsc(String usuario);
+    List<ResumenDiario> findByUsuarioAndFechaBetweenOrderByFechaAsc(String usuario, LocalDate desde, LocalDate hasta);
+}
@@ -13,6 +13,7 @@ public class SesionTrabajo {
     private LocalDateTime inicio;
     private LocalDateTime fin;
     private long duracionMinutos;
+    private boolean pendienteRevision; // Cerrada automáticamente por la reconciliación nocturna
 
     public SesionTrabajo() {}
 
@@ -33,4 +34,6 @@ public class SesionTrabajo {
     public void setFin(LocalDateTime fin) { this.fin = fin; }
     public long getDuracionMinutos() { return duracionMinutos; }
     public void setDuracionMinutos(long duracionMinutos) { this.duracionMinutos = duracionMinutos; }
+    public boolean isPendienteRevision() { return pendienteRevision; }
+    public void setPendienteRevision(boolean pendienteRevision) { this.pendienteRevision = pendienteRevision; }
 }
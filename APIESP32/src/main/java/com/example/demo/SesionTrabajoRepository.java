@@ -7,4 +7,5 @@ import java.util.List;
 public interface SesionTrabajoRepository extends MongoRepository<SesionTrabajo, String> {
     List<SesionTrabajo> findByUsuario(String usuario);
     List<SesionTrabajo> findByUsuarioAndInicioBetween(String usuario, LocalDateTime inicio, LocalDateTime fin);
+    List<SesionTrabajo> findByPendienteRevisionTrue();
 }
@@ -0,0 +1,42 @@
+package com.example.demo;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+// Último fichaje aceptado de cada usuario, calculado con una sola agregación sobre control_presencia.
+// Lo usan la reconstrucción de la ocupación y la reconciliación nocturna.
+public class UltimoFichaje {
+    private String id; // _id del grupo = username
+    private String tipo;
+    private LocalDateTime fechaHora;
+    private Long secuencia; // Mayor secuencia de fichaje del usuario (null si no tiene ninguna)
+
+    // 'filtro' se aplica sobre el resultado agrupado (campos: _id, tipo, fechaHora, secuencia); null = todos
+    public static Aggregation agregacion(Criteria filtro) {
+        return agregacion(null, filtro);
+    }
+
+    // 'eventos' restringe además los fichajes que se agrupan (p.ej. por _id); null = todos
+    public static Aggregation agregacion(Criteria eventos, Criteria filtro) {
+        Criteria aceptados = Criteria.where("accesoPermitido").is(true);
+        AggregationOperation[] etapas = {
+                Aggregation.match(eventos == null ? aceptados : new Criteria().andOperator(aceptados, eventos)),
+                Aggregation.sort(Sort.by("fechaHora", "secuencia", "_id")),
+                Aggregation.group("usuario").last("tipo").as("tipo").last("fechaHora").as("fechaHora")
+                        .max("secuencia").as("secuencia")
+        };
+        Aggregation agregacion = filtro == null ? Aggregation.newAggregation(etapas)
+                : Aggregation.newAggregation(etapas[0], etapas[1], etapas[2], Aggregation.match(filtro));
+        return agregacion.withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+    }
+
+    public String getUsuario() { return id; }
+    public String getTipo() { return tipo; }
+    public LocalDateTime getFechaHora() { return fechaHora; }
+    public Long getSecuencia() { return secuencia; }
+}
@@ -2,6 +2,8 @@ package com.example.demo;
 
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -10,4 +12,5 @@ public interface UsuarioRepository extends MongoRepository<Usuario, String> {
     Optional<Usuario> findByUsername(String username);
     Optional<Usuario> findByRfidToken(String rfidToken);
     boolean existsByUsername(String username);
+    List<Usuario> findByUsernameIn(Collection<String> usernames);
 }
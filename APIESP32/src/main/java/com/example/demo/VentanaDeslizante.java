@@ -0,0 +1,113 @@
+package com.example.demo;
+
+// Estadísticas de las últimas N muestras con coste O(1) por muestra (amortizado en min/max):
+// - media y varianza con Welford deslizante (sin recorrer la ventana)
+// - mínimo y máximo con colas monótonas de índices
+// No es thread-safe: la sincronización la hace EstadisticasSensor.
+public class VentanaDeslizante {
+
+    private final int tamano;
+    private final double[] valores;
+    private long muestras; // Total de muestras recibidas (secuencia de la siguiente)
+
+    private double media;
+    private double m2; // Suma de cuadrados de las desviaciones (Welford)
+
+    // Colas monótonas de números de secuencia (anillos de capacidad 'tamano')
+    private final long[] colaMin;
+    private int inicioMin, finMin, largoMin;
+    private final long[] colaMax;
+    private int inicioMax, finMax, largoMax;
+
+    public VentanaDeslizante(int tamano) {
+        if (tamano < 2) {
+            throw new IllegalArgumentException("La ventana debe tener al menos 2 muestras");
+        }
+        this.tamano = tamano;
+        this.valores = new double[tamano];
+        this.colaMin = new long[tamano];
+        this.colaMax = new long[tamano];
+    }
+
+    public void agregar(double x) {
+        long seq = muestras;
+        int pos = (int) (seq % tamano);
+
+        if (seq < tamano) {
+            // Ventana aún llenándose: Welford clásico
+            double delta = x - media;
+            media += delta / (seq + 1);
+            m2 += delta * (x - media);
+        } else {
+            // Ventana llena: sale la muestra más antigua (que ocupa la misma posición) y entra x
+            double viejo = valores[pos];
+            double mediaAnterior = media;
+            media += (x - viejo) / tamano;
+            m2 += (x - viejo) * (x - media + viejo - mediaAnterior);
+            if (m2 < 0) {
+                m2 = 0; // Error de redondeo
+            }
+        }
+        valores[pos] = x;
+        muestras++;
+
+        // Primero caducamos por la cabeza (secuencias <= limite ya no están en la ventana),
+        // así las colas nunca superan 'tamano' elementos
+        long limite = seq - tamano;
+        while (largoMin > 0 && colaMin[inicioMin] <= limite) {
+            inicioMin = siguiente(inicioMin);
+            largoMin--;
+        }
+        while (largoMax > 0 && colaMax[inicioMax] <= limite) {
+            inicioMax = siguiente(inicioMax);
+            largoMax--;
+        }
+
+        // Mínimo: descartamos por la cola los que sean >= x
+        while (largoMin > 0 && valor(colaMin[anterior(finMin)]) >= x) {
+            finMin = anterior(finMin);
+            largoMin--;
+        }
+        colaMin[finMin] = seq;
+        finMin = siguiente(finMin);
+        largoMin++;
+
+        // Máximo: simétrico
+        while (largoMax > 0 && valor(colaMax[anterior(finMax)]) <= x) {
+            finMax = anterior(finMax);
+            largoMax--;
+        }
+        colaMax[finMax] = seq;
+        finMax = siguiente(finMax);
+        largoMax++;
+    }
+
+    public int getTamano() { return tamano; }
+    public int getOcupadas() { return (int) Math.min(muestras, tamano); }
+    public boolean isLlena() { return muestras >= tamano; }
+    public double getMedia() { return media; }
+    public double getMinimo() { return largoMin == 0 ? Double.NaN : valor(colaMin[inicioMin]); }
+    public double getMaximo() { return largoMax == 0 ? Double.NaN : valor(colaMax[inicioMax]); }
+
+    // Varianza muestral de la ventana
+    public double getVarianza() {
+        int n = getOcupadas();
+        return n < 2 ? 0 : m2 / (n - 1);
+    }
+
+    public double getDesviacion() {
+        return Math.sqrt(getVarianza());
+    }
+
+    private double valor(long seq) {
+        return valores[(int) (seq % tamano)];
+    }
+
+    private int siguiente(int i) {
+        return i + 1 == tamano ? 0 : i + 1;
+    }
+
+    private int anterior(int i) {
+        return i == 0 ? tamano - 1 : i - 1;
+    }
+}
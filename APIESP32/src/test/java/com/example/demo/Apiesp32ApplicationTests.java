@@ -3,7 +3,8 @@ package com.example.demo;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+// Sin MongoDB en el entorno de tests: el índice de secuencias no puede bloquear el arranque
+@SpringBootTest(properties = "mongo.indice-secuencias.obligatorio=false")
 class Apiesp32ApplicationTests {
 
 	@Test
@@ -0,0 +1,154 @@
+package com.example.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class PlegadoJornadaTest {
+
+	private static final LocalDateTime DIA = LocalDateTime.of(2025, 3, 3, 0, 0);
+
+	private static ControlPresencia evento(String tipo, int hora, int minuto) {
+		return new ControlPresencia("ana", DIA.plusHours(hora).plusMinutes(minuto), "TOKEN", tipo, true, "");
+	}
+
+	private static PlegadoJornada plegar(PoliticaJornada politica, ControlPresencia... eventos) {
+		PlegadoJornada plegado = new PlegadoJornada("ana", politica);
+		for (ControlPresencia e : eventos) {
+			plegado.aplicar(e);
+		}
+		return plegado;
+	}
+
+	@Test
+	void entradaYSalidaGeneranUnaSesion() {
+		PlegadoJornada p = plegar(new PoliticaJornada(false, true), evento("ENTRADA", 9, 0), evento("SALIDA", 17, 30));
+
+		assertEquals(1, p.getSesiones().size());
+		SesionTrabajo s = p.getSesiones().get(0);
+		assertEquals(DIA.plusHours(9), s.getInicio());
+		assertEquals(DIA.plusHours(17).plusMinutes(30), s.getFin());
+		assertEquals(510, s.getDuracionMinutos());
+		assertFalse(s.isPendienteRevision());
+		assertEquals(PlegadoJornada.FUERA, p.estado().getEstado());
+		assertNull(p.estado().getDesde());
+	}
+
+	@Test
+	void pausaYMedicoCierranElTramoDeTrabajo() {
+		PlegadoJornada p = plegar(new PoliticaJornada(false, true),
+				evento("ENTRADA", 9, 0), evento("INICIO_PAUSA", 11, 0), evento("FIN_PAUSA", 11, 30),
+				evento("CONSULTA", 13, 0), evento("VUELTA_MEDICO", 14, 0), evento("SALIDA", 18, 0));
+
+		assertEquals(3, p.getSesiones().size());
+		assertEquals(2, p.getPausas().size());
+		assertEquals(PlegadoJornada.PAUSA, p.getPausas().get(0).getTipo());
+		assertEquals(30, p.getPausas().get(0).getDuracionMinutos());
+		assertEquals(PlegadoJornada.MEDICO, p.getPausas().get(1).getTipo());
+		assertEquals(60, p.getPausas().get(1).getDuracionMinutos());
+	}
+
+	@Test
+	void fichajesRepetidosEIntentosNoAlteranElTramo() {
+		ControlPresencia denegado = evento("ENTRADA", 8, 0);
+		denegado.setAccesoPermitido(false);
+
+		PlegadoJornada p = plegar(new PoliticaJornada(false, true), denegado, evento("ENTRADA", 9, 0),
+				evento("ENTRADA", 10, 0), evento("INTENTO", 11, 0), evento("SALIDA", 12, 0));
+
+		assertEquals(1, p.getSesiones().size());
+		assertEquals(DIA.plusHours(9), p.getSesiones().get(0).getInicio());
+		assertEquals(180, p.getSesiones().get(0).getDuracionMinutos());
+	}
+
+	@Test
+	void salidaDeAutoCierreMarcaLaSesionParaRevision() {
+		ControlPresencia cierre = evento("SALIDA", 18, 0);
+		cierre.setMetodoAuth(ReconciliacionSesionesService.METODO_AUTO_CIERRE);
+
+		PlegadoJornada p = plegar(new PoliticaJornada(false, true), evento("ENTRADA", 9, 0), cierre);
+
+		assertTrue(p.getSesiones().get(0).isPendienteRevision());
+	}
+
+	@Test
+	void continuarDesdeElEstadoGuardadoEquivaleAPlegarTodoSeguido() {
+		PoliticaJornada politica = new PoliticaJornada(false, true);
+		ControlPresencia[] eventos = { evento("ENTRADA", 9, 0), evento("INICIO_PAUSA", 11, 0),
+				evento("FIN_PAUSA", 11, 15), evento("SALIDA", 15, 0) };
+
+		PlegadoJornada completo = plegar(politica, eventos);
+
+		PlegadoJornada primeraParte = plegar(politica, eventos[0], eventos[1]);
+		PlegadoJornada segundaParte = new PlegadoJornada(primeraParte.estado(), politica);
+		segundaParte.aplicar(eventos[2]);
+		segundaParte.aplicar(eventos[3]);
+
+		List<SesionTrabajo> sesiones = new ArrayList<>(primeraParte.getSesiones());
+		sesiones.addAll(segundaParte.getSesiones());
+		assertEquals(completo.getSesiones().size(), sesiones.size());
+		for (int i = 0; i < sesiones.size(); i++) {
+			assertEquals(completo.getSesiones().get(i).getInicio(), sesiones.get(i).getInicio());
+			assertEquals(completo.getSesiones().get(i).getFin(), sesiones.get(i).getFin());
+		}
+		assertEquals(completo.getPausas().size(), primeraParte.getPausas().size() + segundaParte.getPausas().size());
+		assertEquals(completo.estado().getEstado(), segundaParte.estado().getEstado());
+		assertEquals(completo.estado().getUltimoEvento(), segundaParte.estado().getUltimoEvento());
+	}
+
+	@Test
+	void noAdmiteEventosAnterioresAlUltimoAplicado() {
+		PlegadoJornada p = plegar(new PoliticaJornada(false, true), evento("ENTRADA", 9, 0), evento("SALIDA", 17, 0));
+
+		assertFalse(p.admite(evento("INICIO_PAUSA", 12, 0)));
+		assertTrue(p.admite(evento("SALIDA", 17, 0)));
+		assertTrue(p.admite(evento("ENTRADA", 18, 0)));
+	}
+
+	@Test
+	void elResumenDiarioAplicaLaPolitica() {
+		ControlPresencia[] eventos = { evento("ENTRADA", 9, 0), evento("INICIO_PAUSA", 11, 0),
+				evento("FIN_PAUSA", 11, 30), evento("CONSULTA", 13, 0), evento("VUELTA_MEDICO", 14, 0),
+				evento("SALIDA", 18, 0) };
+
+		PoliticaJornada soloTrabajo = new PoliticaJornada(false, false);
+		PlegadoJornada p = plegar(soloTrabajo, eventos);
+		ResumenDiario r = PlegadoJornada.resumir("ana", p.getSesiones(), p.getPausas(), soloTrabajo).iterator().next();
+		assertEquals(LocalDate.of(2025, 3, 3), r.getFecha());
+		assertEquals("ana|2025-03-03", r.getId());
+		assertEquals(3, r.getSesiones());
+		assertEquals(120 + 90 + 240, r.getMinutosTrabajo());
+		assertEquals(30, r.getMinutosPausa());
+		assertEquals(60, r.getMinutosMedico());
+
+		PoliticaJornada todoComputa = new PoliticaJornada(true, true);
+		p = plegar(todoComputa, eventos);
+		r = PlegadoJornada.resumir("ana", p.getSesiones(), p.getPausas(), todoComputa).iterator().next();
+		assertEquals(120 + 90 + 240 + 30 + 60, r.getMinutosTrabajo());
+	}
+
+	@Test
+	void cadaTramoSeImputaAlDiaEnQueEmpieza() {
+		PoliticaJornada politica = new PoliticaJornada(false, true);
+		PlegadoJornada p = plegar(politica, evento("ENTRADA", 22, 0), evento("SALIDA", 30, 0));
+
+		List<ResumenDiario> dias = new ArrayList<>(PlegadoJornada.resumir("ana", p.getSesiones(), p.getPausas(), politica));
+		assertEquals(1, dias.size());
+		assertEquals(LocalDate.of(2025, 3, 3), dias.get(0).getFecha());
+		assertEquals(480, dias.get(0).getMinutosTrabajo());
+	}
+
+	@Test
+	void laFirmaCambiaConLaPolitica() {
+		assertFalse(new PoliticaJornada(false, true).firma().equals(new PoliticaJornada(true, true).firma()));
+		assertEquals(new PoliticaJornada(false, true).firma(), new PoliticaJornada(false, true).firma());
+	}
+}
@@ -0,0 +1,53 @@
+package com.example.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+
+class ReconciliacionSesionesServiceTest {
+
+	private static final LocalDateTime LUNES_0905 = LocalDateTime.of(2025, 3, 3, 9, 5);
+
+	@Test
+	void jornadaDeDiaSaleAlFinDelHorarioElMismoDia() {
+		assertEquals(LocalDateTime.of(2025, 3, 3, 18, 0),
+				ReconciliacionSesionesService.horaDeSalida(LUNES_0905, "09:00 - 18:00"));
+	}
+
+	@Test
+	void turnoDeNocheSaleAlDiaSiguiente() {
+		LocalDateTime entrada = LocalDateTime.of(2025, 3, 3, 22, 5);
+		assertEquals(LocalDateTime.of(2025, 3, 4, 6, 0),
+				ReconciliacionSesionesService.horaDeSalida(entrada, "22:00 - 06:00"));
+	}
+
+	@Test
+	void turnoDeNocheConEntradaTrasLaMedianocheSaleEseMismoDia() {
+		LocalDateTime entrada = LocalDateTime.of(2025, 3, 4, 0, 30);
+		assertEquals(LocalDateTime.of(2025, 3, 4, 6, 0),
+				ReconciliacionSesionesService.horaDeSalida(entrada, "22:00 - 06:00"));
+	}
+
+	@Test
+	void turnoQueAcabaAMedianocheSaleALas0000DelDiaSiguiente() {
+		LocalDateTime entrada = LocalDateTime.of(2025, 3, 3, 16, 2);
+		assertEquals(LocalDateTime.of(2025, 3, 4, 0, 0),
+				ReconciliacionSesionesService.horaDeSalida(entrada, "16:00 - 00:00"));
+	}
+
+	@Test
+	void entradaPosteriorAlFinDelHorarioSeCierraEnLaPropiaEntrada() {
+		LocalDateTime entrada = LocalDateTime.of(2025, 3, 3, 19, 30);
+		assertEquals(entrada, ReconciliacionSesionesService.horaDeSalida(entrada, "09:00 - 18:00"));
+	}
+
+	@Test
+	void sinHorarioOHorarioInvalidoSeUsanLas1800() {
+		LocalDateTime esperado = LocalDateTime.of(2025, 3, 3, 18, 0);
+		assertEquals(esperado, ReconciliacionSesionesService.horaDeSalida(LUNES_0905, null));
+		assertEquals(esperado, ReconciliacionSesionesService.horaDeSalida(LUNES_0905, "mañanas"));
+		assertEquals(esperado, ReconciliacionSesionesService.horaDeSalida(LUNES_0905, "9h - 18h"));
+	}
+}